@@ -0,0 +1,142 @@
+package org.groovyutil.pgp;
+
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+
+import java.util.zip.Deflater;
+
+/**
+ * EncryptionOptions selects the symmetric cipher and compression PgpUtility encrypts with.  The defaults are AES-128,
+ * ZIP at the default level, ASCII armor and an integrity packet, with automatic compression on, which stores input
+ * that does not compress, such as zip, gzip or image files, without compressing it again.  AES-128 is the default,
+ * and so the cipher of the overloads without options, because the JCE of a JRE before 8u161 without the unlimited
+ * strength policy rejects keys longer than 128 bits; AES-256 and the other 192 and 256 bit ciphers need that policy.
+ * <pre><code>
+ *     EncryptionOptions options = new EncryptionOptions()
+ *             .setCipher(EncryptionOptions.Cipher.AES_256)
+ *             .setCompression(EncryptionOptions.Compression.ZLIB)
+ *             .setCompressionLevel(1);
+ *     encryptFile("report.csv", "report.csv.pgp", new String[]{"pub.asc"}, options);
+ * </code></pre>
+ */
+public class EncryptionOptions {
+
+    public enum Cipher {
+        AES_128(SymmetricKeyAlgorithmTags.AES_128),
+        AES_192(SymmetricKeyAlgorithmTags.AES_192),
+        AES_256(SymmetricKeyAlgorithmTags.AES_256),
+        CAMELLIA_128(SymmetricKeyAlgorithmTags.CAMELLIA_128),
+        CAMELLIA_192(SymmetricKeyAlgorithmTags.CAMELLIA_192),
+        CAMELLIA_256(SymmetricKeyAlgorithmTags.CAMELLIA_256),
+        TWOFISH(SymmetricKeyAlgorithmTags.TWOFISH),
+        BLOWFISH(SymmetricKeyAlgorithmTags.BLOWFISH),
+        CAST5(SymmetricKeyAlgorithmTags.CAST5),
+        TRIPLE_DES(SymmetricKeyAlgorithmTags.TRIPLE_DES);
+
+        private final int tag;
+
+        Cipher(int tag) {
+            this.tag = tag;
+        }
+
+        int getTag() {
+            return tag;
+        }
+    }
+
+    public enum Compression {
+        NONE(CompressionAlgorithmTags.UNCOMPRESSED),
+        ZIP(CompressionAlgorithmTags.ZIP),
+        ZLIB(CompressionAlgorithmTags.ZLIB),
+        BZIP2(CompressionAlgorithmTags.BZIP2);
+
+        private final int tag;
+
+        Compression(int tag) {
+            this.tag = tag;
+        }
+
+        int getTag() {
+            return tag;
+        }
+    }
+
+    private Cipher cipher = Cipher.AES_128;
+    private Compression compression = Compression.ZIP;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private boolean autoCompression = true;
+    private boolean armor = true;
+    private boolean integrityCheck = true;
+
+    public Cipher getCipher() {
+        return cipher;
+    }
+
+    public EncryptionOptions setCipher(Cipher cipher) {
+        this.cipher = cipher;
+        return this;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public EncryptionOptions setCompression(Compression compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate level of ZIP and ZLIB compression, from 1 (fastest) to 9 (smallest), or -1 for the default
+     * level.  BZIP2 always compresses at its largest block size.
+     */
+    public EncryptionOptions setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Compression level must be -1 or between 1 and 9: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public boolean isAutoCompression() {
+        return autoCompression;
+    }
+
+    /**
+     * Sets whether input is stored uncompressed when it looks incompressible, either by the extension of its file
+     * name or by how well its first block deflates.
+     */
+    public EncryptionOptions setAutoCompression(boolean autoCompression) {
+        this.autoCompression = autoCompression;
+        return this;
+    }
+
+    public boolean isArmor() {
+        return armor;
+    }
+
+    public EncryptionOptions setArmor(boolean armor) {
+        this.armor = armor;
+        return this;
+    }
+
+    public boolean isIntegrityCheck() {
+        return integrityCheck;
+    }
+
+    public EncryptionOptions setIntegrityCheck(boolean integrityCheck) {
+        this.integrityCheck = integrityCheck;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "cipher = " + cipher + " compression = " + compression + " level = " + compressionLevel
+                + " auto = " + autoCompression + " armor = " + armor + " integrityCheck = " + integrityCheck;
+    }
+}
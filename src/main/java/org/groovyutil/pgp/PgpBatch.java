@@ -0,0 +1,120 @@
+package org.groovyutil.pgp;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * PgpBatch runs a PGP operation over a set of files on a fixed number of threads, one file per thread at a time since
+ * each file is CPU bound.  Each file is written to a uniquely named temporary file beside its output, which is renamed
+ * over the output when the file succeeds and deleted when it fails, so an output file is never partial.  A failed file
+ * does not stop the others.  Input files that would be written to the same output, such as <code>a/x.csv</code> and
+ * <code>b/x.csv</code>, all fail without being processed.
+ */
+final class PgpBatch {
+
+    interface FileOperation {
+        void run(InputStream inputStream, String inputFileName, OutputStream outputStream) throws Exception;
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int threads;
+
+    /**
+     * @param threads the number of files processed at once, or the number of processors when not positive
+     */
+    PgpBatch(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs the operation on each input file, writing it to the file named by <code>outputName</code> in
+     * <code>outputDirectory</code>.
+     */
+    PgpBatchReport run(List<String> inputFileNames, String outputDirectory, UnaryOperator<String> outputName,
+                       FileOperation operation) {
+        long startTime = System.currentTimeMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, inputFileNames.size())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pgp-batch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            List<File> outputFiles = new ArrayList<File>();
+            Map<String, Integer> outputCounts = new HashMap<String, Integer>();
+            for (String inputFileName : inputFileNames) {
+                File outputFile = new File(outputDirectory, outputName.apply(new File(inputFileName).getName()))
+                        .getAbsoluteFile();
+                outputFiles.add(outputFile);
+                outputCounts.merge(outputFile.getPath(), 1, Integer::sum);
+            }
+
+            List<Future<PgpBatchReport.FileResult>> futures = new ArrayList<Future<PgpBatchReport.FileResult>>();
+            for (int index = 0; index < inputFileNames.size(); index++) {
+                String inputFileName = inputFileNames.get(index);
+                File outputFile = outputFiles.get(index);
+                if (outputCounts.get(outputFile.getPath()) > 1) {
+                    futures.add(CompletableFuture.completedFuture(new PgpBatchReport.FileResult(inputFileName,
+                            outputFile.getPath(), new File(inputFileName).length(), 0, 0,
+                            new IllegalArgumentException("Output " + outputFile + " is the output of more than one "
+                                    + "input file"))));
+                } else {
+                    futures.add(executor.submit(() -> runFile(inputFileName, outputFile, operation)));
+                }
+            }
+
+            List<PgpBatchReport.FileResult> results = new ArrayList<PgpBatchReport.FileResult>();
+            for (Future<PgpBatchReport.FileResult> future : futures) {
+                results.add(future.get());
+            }
+            return new PgpBatchReport(results, System.currentTimeMillis() - startTime);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static PgpBatchReport.FileResult runFile(String inputFileName, File outputFile, FileOperation operation) {
+        long startTime = System.currentTimeMillis();
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(outputFile.getParentFile().toPath(), outputFile.getName() + ".", ".tmp");
+            try (InputStream inputStream = new FileInputStream(inputFileName);
+                 OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile.toFile()),
+                         BUFFER_SIZE)) {
+                operation.run(inputStream, inputFileName, outputStream);
+            }
+            Files.move(tempFile, outputFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            return new PgpBatchReport.FileResult(inputFileName, outputFile.getPath(), new File(inputFileName).length(),
+                    outputFile.length(), System.currentTimeMillis() - startTime, null);
+        } catch (Throwable e) {
+            if (tempFile != null) {
+                tempFile.toFile().delete();
+            }
+            return new PgpBatchReport.FileResult(inputFileName, outputFile.getPath(), new File(inputFileName).length(),
+                    0, System.currentTimeMillis() - startTime, e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.groovyutil.pgp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a batch encryption or decryption, one result per input file in input order.
+ */
+public class PgpBatchReport {
+
+    public static class FileResult {
+        private final String inputFileName;
+        private final String outputFileName;
+        private final long inputBytes;
+        private final long outputBytes;
+        private final long elapsedMillis;
+        private final Throwable error;
+
+        FileResult(String inputFileName, String outputFileName, long inputBytes, long outputBytes, long elapsedMillis,
+                   Throwable error) {
+            this.inputFileName = inputFileName;
+            this.outputFileName = outputFileName;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+        }
+
+        public String getInputFileName() {
+            return inputFileName;
+        }
+
+        /**
+         * The file written, which only exists when the file succeeded.
+         */
+        public String getOutputFileName() {
+            return outputFileName;
+        }
+
+        public long getInputBytes() {
+            return inputBytes;
+        }
+
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return inputFileName + " -> " + outputFileName + " " + (error == null ? "OK" : "FAILED " + error)
+                    + " time = " + elapsedMillis + " bytes in = " + inputBytes + " bytes out = " + outputBytes;
+        }
+    }
+
+    private final List<FileResult> results;
+    private final long elapsedMillis;
+
+    PgpBatchReport(List<FileResult> results, long elapsedMillis) {
+        this.results = Collections.unmodifiableList(results);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<FileResult> getResults() {
+        return results;
+    }
+
+    public List<FileResult> getFailures() {
+        List<FileResult> failures = new ArrayList<FileResult>();
+        for (FileResult result : results) {
+            if (!result.isSuccessful()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return getFailures().isEmpty();
+    }
+
+    /**
+     * The wall clock time of the whole batch.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getInputBytes() {
+        long inputBytes = 0;
+        for (FileResult result : results) {
+            inputBytes += result.getInputBytes();
+        }
+        return inputBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("files = ").append(results.size())
+                .append(" failed = ").append(getFailures().size())
+                .append(" time = ").append(elapsedMillis)
+                .append(" bytes in = ").append(getInputBytes());
+        for (FileResult result : results) {
+            report.append(System.lineSeparator()).append(result);
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,202 @@
+package org.groovyutil.pgp;
+
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.groovyutil.sql.CacheStatistics;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * PgpKeyCache keeps parsed public keys, public key rings and unlocked private keys keyed by the path of their key
+ * file, so encrypting or decrypting many files with the same keys parses each key ring and derives each passphrase key
+ * once.  An entry is reloaded when the modification time or length of its file changes.  Unlocked private keys are
+ * also dropped by the first lookup <code>privateKeyMaxAgeMillis</code> after they were unlocked, and are only returned
+ * for the passphrase that unlocked them, compared by SHA-256 digest.  Cached public keys can also be looked up by key
+ * ID.
+ */
+final class PgpKeyCache {
+
+    private static final class Entry<K> {
+        final long lastModified;
+        final long length;
+        final K key;
+        final long keyId;
+        final byte[] passwordDigest;
+        final long loadedAt;
+
+        Entry(long lastModified, long length, K key, long keyId, byte[] passwordDigest) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.key = key;
+            this.keyId = keyId;
+            this.passwordDigest = passwordDigest;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    private final HashMap<String, Entry<PGPPublicKey>> publicKeys = new HashMap<String, Entry<PGPPublicKey>>();
+    private final HashMap<String, Entry<PGPPublicKeyRingCollection>> publicKeyRings =
+            new HashMap<String, Entry<PGPPublicKeyRingCollection>>();
+    private final HashMap<String, Entry<PGPPrivateKey>> privateKeys = new HashMap<String, Entry<PGPPrivateKey>>();
+
+    private boolean enabled = true;
+    private long privateKeyMaxAgeMillis = 15 * 60 * 1000;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    PGPPublicKey getPublicKey(String fileName, Supplier<PGPPublicKey> loader) {
+        return getFileEntry(publicKeys, fileName, loader, PGPPublicKey::getKeyID);
+    }
+
+    PGPPublicKeyRingCollection getPublicKeyRings(String fileName, Supplier<PGPPublicKeyRingCollection> loader) {
+        return getFileEntry(publicKeyRings, fileName, loader, keyRings -> 0);
+    }
+
+    private <K> K getFileEntry(HashMap<String, Entry<K>> entries, String fileName, Supplier<K> loader,
+                               ToLongFunction<K> keyIdOf) {
+        File file = new File(fileName);
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        synchronized (this) {
+            evictExpired();
+            Entry<K> entry = entries.get(path);
+            if (enabled && entry != null && entry.lastModified == lastModified && entry.length == length) {
+                hits++;
+                return entry.key;
+            }
+            misses++;
+        }
+
+        K key = loader.get();
+
+        synchronized (this) {
+            if (enabled) {
+                entries.put(path, new Entry<K>(lastModified, length, key, keyIdOf.applyAsLong(key), null));
+            }
+        }
+        return key;
+    }
+
+    PGPPrivateKey getPrivateKey(String fileName, String password, Supplier<PGPPrivateKey> loader) {
+        File file = new File(fileName);
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        byte[] passwordDigest = digest(password);
+
+        synchronized (this) {
+            evictExpired();
+            Entry<PGPPrivateKey> entry = privateKeys.get(path);
+            if (enabled && entry != null && entry.lastModified == lastModified && entry.length == length
+                    && MessageDigest.isEqual(entry.passwordDigest, passwordDigest)) {
+                hits++;
+                return entry.key;
+            }
+            misses++;
+        }
+
+        PGPPrivateKey privateKey = loader.get();
+
+        synchronized (this) {
+            if (enabled && privateKey != null) {
+                privateKeys.put(path, new Entry<PGPPrivateKey>(lastModified, length, privateKey, privateKey.getKeyID(),
+                        passwordDigest));
+            }
+        }
+        return privateKey;
+    }
+
+    /**
+     * Returns the cached public key with the key ID, or null.  The lookup is not counted in the statistics, which
+     * describe the loads by file.  Private keys have no such lookup, as they are only returned for their passphrase.
+     */
+    synchronized PGPPublicKey getPublicKey(long keyId) {
+        for (Entry<PGPPublicKey> entry : publicKeys.values()) {
+            if (entry.keyId == keyId) {
+                return entry.key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the public keys, key rings and private keys read from the file.
+     */
+    synchronized void evict(String fileName) {
+        String path = new File(fileName).getAbsolutePath();
+        if (publicKeys.remove(path) != null) {
+            evictions++;
+        }
+        if (publicKeyRings.remove(path) != null) {
+            evictions++;
+        }
+        if (privateKeys.remove(path) != null) {
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops every key.
+     */
+    synchronized void evictAll() {
+        evictions += publicKeys.size() + publicKeyRings.size() + privateKeys.size();
+        publicKeys.clear();
+        publicKeyRings.clear();
+        privateKeys.clear();
+    }
+
+    /**
+     * Drops the unlocked private keys past their maximum age.
+     */
+    synchronized void evictExpired() {
+        Iterator<Map.Entry<String, Entry<PGPPrivateKey>>> entries = privateKeys.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (isExpired(entries.next().getValue())) {
+                entries.remove();
+                evictions++;
+            }
+        }
+    }
+
+    synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            evictAll();
+        }
+    }
+
+    synchronized void setPrivateKeyMaxAgeMillis(long privateKeyMaxAgeMillis) {
+        this.privateKeyMaxAgeMillis = privateKeyMaxAgeMillis;
+        evictExpired();
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hits, misses, evictions,
+                publicKeys.size() + publicKeyRings.size() + privateKeys.size());
+    }
+
+    private boolean isExpired(Entry<?> entry) {
+        return System.currentTimeMillis() - entry.loadedAt >= privateKeyMaxAgeMillis;
+    }
+
+    private static byte[] digest(String password) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package org.groovyutil.pgp;
 
-import org.apache.commons.io.IOUtils;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
-import org.bouncycastle.bcpg.CompressionAlgorithmTags;
 import org.bouncycastle.bcpg.HashAlgorithmTags;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.*;
@@ -13,14 +11,23 @@ import org.bouncycastle.openpgp.operator.PBESecretKeyEncryptor;
 import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
 import org.bouncycastle.openpgp.operator.jcajce.*;
 import org.bouncycastle.util.io.Streams;
+import org.groovyutil.file.FileUtility;
+import org.groovyutil.sql.CacheStatistics;
 
 import java.io.*;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
 
 
 /**
@@ -56,10 +63,26 @@ import java.util.Iterator;
  *     FileOutputStream privOutput = new FileOutputStream("priv.asc");
  *     writeKeyPair(keyPair, pubOutput, privOutput);
  * </code></pre>
+ * <p>
+ * The following example illustrates encrypting and decrypting a set of files on four threads.
+ * <pre><code>
+ *     PgpBatchReport report = encryptFiles("outbound/*.csv", "encrypted", new String[]{"pub.asc"},
+ *             new EncryptionOptions(), 4);
+ *     decryptFiles("inbound/*.pgp", "decrypted", "priv.asc", "secret", 4);
+ * </code></pre>
  */
 public final class PgpUtility {
     private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
     private static final int DEFAULT_KEY_SIZE = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final PgpKeyCache KEY_CACHE = new PgpKeyCache();
+    private static final int COMPRESSIBILITY_SAMPLE_SIZE = 1 << 16;
+    private static final double INCOMPRESSIBLE_RATIO = 0.95;
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+            "zip", "gz", "tgz", "bz2", "tbz2", "xz", "txz", "7z", "rar", "zst", "lz4", "jar", "war", "pgp", "gpg",
+            "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "mkv", "avi", "mov", "docx", "xlsx", "pptx"));
+    private static final String ENCRYPTED_EXTENSION = ".pgp";
+    private static final Set<String> ENCRYPTED_EXTENSIONS = new HashSet<String>(Arrays.asList("pgp", "gpg", "asc"));
 
 
     private PgpUtility() {
@@ -145,7 +168,15 @@ public final class PgpUtility {
         }
     }
 
+    /**
+     * Reads the encryption key of a public key file, from the key cache when the file has not changed since it was
+     * cached.
+     */
     public static PGPPublicKey readPublicKeyFile(String fileName) {
+        return KEY_CACHE.getPublicKey(fileName, () -> loadPublicKeyFile(fileName));
+    }
+
+    private static PGPPublicKey loadPublicKeyFile(String fileName) {
         PGPPublicKey pubKey;
         try {
             InputStream keyIn = new BufferedInputStream(new FileInputStream(fileName));
@@ -158,6 +189,21 @@ public final class PgpUtility {
         return pubKey;
     }
 
+    /**
+     * Reads every key ring of a public key file, from the key cache when the file has not changed since it was cached.
+     */
+    public static PGPPublicKeyRingCollection readPublicKeyRingFile(String fileName) {
+        return KEY_CACHE.getPublicKeyRings(fileName, () -> loadPublicKeyRingFile(fileName));
+    }
+
+    private static PGPPublicKeyRingCollection loadPublicKeyRingFile(String fileName) {
+        try (InputStream keyIn = new BufferedInputStream(new FileInputStream(fileName))) {
+            return new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
+        } catch (IOException | PGPException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static PGPPublicKey readPublicKey(InputStream inputStream) {
         PGPPublicKeyRingCollection pgpPub;
         try {
@@ -188,7 +234,16 @@ public final class PgpUtility {
         throw new IllegalArgumentException("Can't find encryption key in key ring.");
     }
 
+    /**
+     * Reads and unlocks the private key of a secret key file, from the key cache when the file has not changed, the key
+     * was unlocked with the same password and it is younger than the maximum age set with
+     * {@link #setPrivateKeyCacheMaxAge}.
+     */
     public static PGPPrivateKey readPrivateKey(String fileName, String password) {
+        return KEY_CACHE.getPrivateKey(fileName, password, () -> loadPrivateKey(fileName, password));
+    }
+
+    private static PGPPrivateKey loadPrivateKey(String fileName, String password) {
         PGPPrivateKey privateKey = null;
         try {
             FileInputStream keyInputStream = new FileInputStream(fileName);
@@ -211,6 +266,45 @@ public final class PgpUtility {
         return privateKey;
     }
 
+    /**
+     * Returns the cached public key with the key ID, or null when no cached key file holds it.
+     */
+    public static PGPPublicKey getCachedPublicKey(long keyId) {
+        return KEY_CACHE.getPublicKey(keyId);
+    }
+
+    /**
+     * Enables or disables the key cache, which is enabled by default.  Disabling it drops every cached key.
+     */
+    public static void setKeyCacheEnabled(boolean enabled) {
+        KEY_CACHE.setEnabled(enabled);
+    }
+
+    /**
+     * Sets how long an unlocked private key is cached, 15 minutes by default.
+     */
+    public static void setPrivateKeyCacheMaxAge(long maxAgeMillis) {
+        KEY_CACHE.setPrivateKeyMaxAgeMillis(maxAgeMillis);
+    }
+
+    /**
+     * Drops the cached keys read from the key file.
+     */
+    public static void evictKeyCache(String fileName) {
+        KEY_CACHE.evict(fileName);
+    }
+
+    /**
+     * Drops every cached key.
+     */
+    public static void evictKeyCache() {
+        KEY_CACHE.evictAll();
+    }
+
+    public static CacheStatistics keyCacheStatistics() {
+        return KEY_CACHE.getStatistics();
+    }
+
 
     //
     // ENCRYPTION
@@ -227,21 +321,23 @@ public final class PgpUtility {
 
     public static void encryptFile(String inputFileName, String outputFileName, String[] publicKeyFileName,
                                    boolean armor, boolean integrityCheck) {
-        InputStream inputStream;
-        OutputStream outputStream;
-        try {
-            inputStream = new FileInputStream(inputFileName);
-            outputStream = new BufferedOutputStream(new FileOutputStream(outputFileName));
-        } catch (FileNotFoundException e) {
-            throw new IllegalStateException(e);
-        }
+        encryptFile(inputFileName, outputFileName, publicKeyFileName,
+                new EncryptionOptions().setArmor(armor).setIntegrityCheck(integrityCheck));
+    }
 
+    public static void encryptFile(String inputFileName, String outputFileName, String[] publicKeyFileName,
+                                   EncryptionOptions options) {
         PGPPublicKey[] publicKeys = new PGPPublicKey[publicKeyFileName.length];
         for (int i = 0; i < publicKeyFileName.length; i++) {
             publicKeys[i] = readPublicKeyFile(publicKeyFileName[i]);
         }
 
-        encrypt(inputStream, inputFileName, outputStream, publicKeys, armor, integrityCheck);
+        try (InputStream inputStream = new FileInputStream(inputFileName);
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(outputFileName), BUFFER_SIZE)) {
+            encrypt(inputStream, inputFileName, outputStream, publicKeys, options);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
 
@@ -252,34 +348,200 @@ public final class PgpUtility {
 
     public static void encrypt(InputStream inputStream, String inputFileName, OutputStream outputStream,
                                PGPPublicKey[] publicKey, boolean armor, boolean integrityCheck) {
-        if (armor) {
-            outputStream = new ArmoredOutputStream(outputStream);
+        encrypt(inputStream, inputFileName, outputStream, publicKey,
+                new EncryptionOptions().setArmor(armor).setIntegrityCheck(integrityCheck));
+    }
+
+    /**
+     * Encrypts the input as it is read, with the cipher and compression of the options.  The encrypted, compressed and
+     * literal data packets are written as partial length packets of up to 64KB, so memory use does not depend on the
+     * size of the input and output starts before the input is fully read.
+     */
+    public static void encrypt(InputStream inputStream, String inputFileName, OutputStream outputStream,
+                               PGPPublicKey[] publicKey, EncryptionOptions options) {
+        writeEncryptedMessage(inputStream, inputFileName, outputStream, publicKey, null, options);
+    }
+
+
+    //
+    // SIGNED ENCRYPTION
+    //
+
+    public static void signAndEncryptFile(String inputFileName, String outputFileName, String[] publicKeyFileName,
+                                          String privateKeyFileName, String password) {
+        signAndEncryptFile(inputFileName, outputFileName, publicKeyFileName, privateKeyFileName, password,
+                new EncryptionOptions());
+    }
+
+    /**
+     * Signs the input file with the private key of <code>privateKeyFileName</code> and encrypts it for the public keys,
+     * reading the keys through the key cache.
+     */
+    public static void signAndEncryptFile(String inputFileName, String outputFileName, String[] publicKeyFileName,
+                                          String privateKeyFileName, String password, EncryptionOptions options) {
+        PGPPublicKey[] publicKeys = new PGPPublicKey[publicKeyFileName.length];
+        for (int i = 0; i < publicKeyFileName.length; i++) {
+            publicKeys[i] = readPublicKeyFile(publicKeyFileName[i]);
         }
+        PGPPrivateKey signingKey = readPrivateKey(privateKeyFileName, password);
 
+        try (InputStream inputStream = new FileInputStream(inputFileName);
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(outputFileName), BUFFER_SIZE)) {
+            signAndEncrypt(inputStream, inputFileName, outputStream, publicKeys, signingKey, options);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Signs and encrypts the input in a single pass.  The message is a one-pass signature packet, the literal data and
+     * the signature, compressed and encrypted as by {@link #encrypt(InputStream, String, OutputStream, PGPPublicKey[],
+     * EncryptionOptions)}, so the input is read once and never held in memory.  The signature is SHA-256.
+     */
+    public static void signAndEncrypt(InputStream inputStream, String inputFileName, OutputStream outputStream,
+                                      PGPPublicKey[] publicKey, PGPPrivateKey signingKey, EncryptionOptions options) {
+        PGPSignatureGenerator signatureGenerator = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(
+                signingKey.getPublicKeyPacket().getAlgorithm(), HashAlgorithmTags.SHA256).setProvider(PROVIDER));
         try {
-            byte[] bytes = toLiteralZipByteArray(inputStream, inputFileName);
-            PGPEncryptedDataGenerator encGen = new PGPEncryptedDataGenerator(
-                    new JcePGPDataEncryptorBuilder(PGPEncryptedData.CAST5)
-                            .setWithIntegrityPacket(integrityCheck)
-                            .setSecureRandom(new SecureRandom())
-                            .setProvider(PROVIDER));
+            signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, signingKey);
+        } catch (PGPException e) {
+            throw new IllegalStateException(e);
+        }
+        writeEncryptedMessage(inputStream, inputFileName, outputStream, publicKey, signatureGenerator, options);
+    }
 
-            for (int i = 0; i < publicKey.length; i++) {
-                encGen.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(publicKey[i]).setProvider(PROVIDER));
+    /**
+     * Decrypts and verifies the input file.  The signer may be any key, primary or subkey, in the key rings of the
+     * verification key files.  The output file is deleted when the signature does not verify.
+     *
+     * @return the key ID of the signer
+     */
+    public static long decryptAndVerifyFile(String inputFileName, String outputFileName, String privateKeyFileName,
+                                            String password, String... verificationKeyFileName) {
+        PGPPrivateKey privateKey = readPrivateKey(privateKeyFileName, password);
+        PGPPublicKeyRingCollection[] verificationKeyRings = readPublicKeyRingFiles(verificationKeyFileName);
+
+        boolean verified = false;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(inputFileName), BUFFER_SIZE);
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(outputFileName), BUFFER_SIZE)) {
+            long signerKeyId = decryptAndVerifyWithKeyRings(inputStream, outputStream, privateKey,
+                    verificationKeyRings);
+            verified = true;
+            return signerKeyId;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (!verified) {
+                new File(outputFileName).delete();
             }
+        }
+    }
 
-            OutputStream encryptedOutputStream = encGen.open(outputStream, bytes.length);
-            encryptedOutputStream.write(bytes);
-            encryptedOutputStream.close();
+    /**
+     * Decrypts a signed message and verifies its signature in a single pass, updating the signature as the literal
+     * data is written to the output.  The signature can only be checked once the data has been written, so when this
+     * throws the output must be discarded.  The signature must be made by one of the verification keys.
+     *
+     * @return the key ID of the signer
+     * @throws IllegalStateException when the message is not signed, the signature or the integrity check fails, or no
+     *                               verification key matches the signer
+     */
+    public static long decryptAndVerify(InputStream dataInputStream, OutputStream dataOutputStream,
+                                        PGPPrivateKey privateKey, PGPPublicKey... verificationKeys) {
+        return decryptAndVerify(dataInputStream, dataOutputStream, privateKey, verificationKeys, null);
+    }
 
-            if (armor) {
-                outputStream.close();
+    /**
+     * Decrypts and verifies as {@link #decryptAndVerify(InputStream, OutputStream, PGPPrivateKey, PGPPublicKey...)},
+     * with the signer looked up by key ID in the key rings, so it may be a signing subkey or a primary key that cannot
+     * encrypt.
+     */
+    public static long decryptAndVerifyWithKeyRings(InputStream dataInputStream, OutputStream dataOutputStream,
+                                                    PGPPrivateKey privateKey,
+                                                    PGPPublicKeyRingCollection... verificationKeyRings) {
+        return decryptAndVerify(dataInputStream, dataOutputStream, privateKey, null, verificationKeyRings);
+    }
+
+    private static long decryptAndVerify(InputStream dataInputStream, OutputStream dataOutputStream,
+                                         PGPPrivateKey privateKey, PGPPublicKey[] verificationKeys,
+                                         PGPPublicKeyRingCollection[] verificationKeyRings) {
+        try {
+            PGPPublicKeyEncryptedData pbe = findEncryptedData(dataInputStream, privateKey);
+            InputStream clearTextInputStream = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder()
+                    .setProvider(PROVIDER)
+                    .build(privateKey));
+
+            JcaPGPObjectFactory factory = new JcaPGPObjectFactory(clearTextInputStream);
+            Object message = factory.nextObject();
+            if (message instanceof PGPCompressedData) {
+                factory = new JcaPGPObjectFactory(((PGPCompressedData) message).getDataStream());
+                message = factory.nextObject();
             }
+            if (!(message instanceof PGPOnePassSignatureList)) {
+                throw new IllegalStateException("Message is not signed.");
+            }
+
+            PGPOnePassSignature onePassSignature = ((PGPOnePassSignatureList) message).get(0);
+            PGPPublicKey verificationKey = findVerificationKey(onePassSignature.getKeyID(), verificationKeys,
+                    verificationKeyRings);
+            if (verificationKey == null) {
+                throw new IllegalStateException("No verification key for signer "
+                        + Long.toHexString(onePassSignature.getKeyID()).toUpperCase() + ".");
+            }
+            onePassSignature.init(new JcaPGPContentVerifierBuilderProvider().setProvider(PROVIDER), verificationKey);
+
+            PGPLiteralData literalData = (PGPLiteralData) factory.nextObject();
+            InputStream literalDataInputStream = literalData.getInputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = literalDataInputStream.read(buffer)) >= 0) {
+                onePassSignature.update(buffer, 0, length);
+                dataOutputStream.write(buffer, 0, length);
+            }
+            dataOutputStream.flush();
+
+            PGPSignatureList signatureList = (PGPSignatureList) factory.nextObject();
+            if (!onePassSignature.verify(signatureList.get(0))) {
+                throw new IllegalStateException("Signature verification failed.");
+            }
+            if (pbe.isIntegrityProtected() && !pbe.verify()) {
+                throw new IllegalStateException("Message failed integrity check.");
+            }
+            return onePassSignature.getKeyID();
         } catch (IOException | PGPException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    private static PGPPublicKey findVerificationKey(long keyId, PGPPublicKey[] verificationKeys,
+                                                    PGPPublicKeyRingCollection[] verificationKeyRings)
+            throws PGPException {
+        if (verificationKeys != null) {
+            for (PGPPublicKey key : verificationKeys) {
+                if (key.getKeyID() == keyId) {
+                    return key;
+                }
+            }
+        }
+        if (verificationKeyRings != null) {
+            for (PGPPublicKeyRingCollection keyRings : verificationKeyRings) {
+                PGPPublicKey key = keyRings.getPublicKey(keyId);
+                if (key != null) {
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static PGPPublicKeyRingCollection[] readPublicKeyRingFiles(String[] fileNames) {
+        PGPPublicKeyRingCollection[] keyRings = new PGPPublicKeyRingCollection[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            keyRings[i] = readPublicKeyRingFile(fileNames[i]);
+        }
+        return keyRings;
+    }
+
 
     //
     // DECRYPTION
@@ -299,61 +561,9 @@ public final class PgpUtility {
 
     public static void decrypt(InputStream dataInputStream, OutputStream dataOutputStream, PGPPrivateKey privateKey) {
         try {
-            dataInputStream = PGPUtil.getDecoderStream(dataInputStream);
-            JcaPGPObjectFactory encryptedFactory = new JcaPGPObjectFactory(dataInputStream);
-
-            PGPEncryptedDataList enc;
-            Object obj = encryptedFactory.nextObject();
-            //
-            // the first object might be a PGP marker packet.
-            //
-            if (obj instanceof PGPEncryptedDataList) {
-                enc = (PGPEncryptedDataList) obj;
-            } else {
-                enc = (PGPEncryptedDataList) encryptedFactory.nextObject();
-            }
-
-            //
-            // find the secret key
-            //
-            Iterator iter = enc.getEncryptedDataObjects();
-            PGPPublicKeyEncryptedData pbe = null;
-
-            while (pbe == null && iter.hasNext()) {
-                PGPPublicKeyEncryptedData current = (PGPPublicKeyEncryptedData) iter.next();
-                if (current.getKeyID() == privateKey.getKeyID()) {
-                    pbe = current;
-                    break;
-                }
-            }
-
-            if (pbe == null) {
-                throw new IllegalStateException("Input can't be decrypted with the provided key.");
-            }
-
-            InputStream clearTextInputStream = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder()
-                    .setProvider(PROVIDER)
-                    .build(privateKey));
-
-            JcaPGPObjectFactory decryptedFactory = new JcaPGPObjectFactory(clearTextInputStream);
-            Object message = decryptedFactory.nextObject();
-            if (message instanceof PGPCompressedData) {
-                PGPCompressedData cData = (PGPCompressedData) message;
-                JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(cData.getDataStream());
-                message = pgpFact.nextObject();
-            }
-
-            if (message instanceof PGPLiteralData) {
-                PGPLiteralData literalData = (PGPLiteralData) message;
-                InputStream literalDataInputStream = literalData.getInputStream();
-                Streams.pipeAll(literalDataInputStream, dataOutputStream);
-                // TODO should this be closed here?
-                dataOutputStream.close();
-            } else if (message instanceof PGPOnePassSignatureList) {
-                throw new PGPException("encrypted message contains a signed message - not literal data.");
-            } else {
-                throw new PGPException("message is not a simple encrypted file - type unknown.");
-            }
+            PGPPublicKeyEncryptedData pbe = decryptLiteralData(dataInputStream, dataOutputStream, privateKey);
+            // TODO should this be closed here?
+            dataOutputStream.close();
 
             if (pbe.isIntegrityProtected()) {
                 if (!pbe.verify()) {
@@ -376,38 +586,317 @@ public final class PgpUtility {
         }
     }
 
+    /**
+     * Writes the literal data of an unsigned message to the output and returns its encrypted data, for the caller to
+     * check its integrity.
+     */
+    private static PGPPublicKeyEncryptedData decryptLiteralData(InputStream dataInputStream,
+                                                                OutputStream dataOutputStream, PGPPrivateKey privateKey)
+            throws IOException, PGPException {
+        PGPPublicKeyEncryptedData pbe = findEncryptedData(dataInputStream, privateKey);
+
+        InputStream clearTextInputStream = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder()
+                .setProvider(PROVIDER)
+                .build(privateKey));
+
+        JcaPGPObjectFactory decryptedFactory = new JcaPGPObjectFactory(clearTextInputStream);
+        Object message = decryptedFactory.nextObject();
+        if (message instanceof PGPCompressedData) {
+            PGPCompressedData cData = (PGPCompressedData) message;
+            JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(cData.getDataStream());
+            message = pgpFact.nextObject();
+        }
+
+        if (message instanceof PGPLiteralData) {
+            PGPLiteralData literalData = (PGPLiteralData) message;
+            InputStream literalDataInputStream = literalData.getInputStream();
+            Streams.pipeAll(literalDataInputStream, dataOutputStream);
+        } else if (message instanceof PGPOnePassSignatureList) {
+            throw new PGPException("encrypted message contains a signed message - use decryptAndVerify.");
+        } else {
+            throw new PGPException("message is not a simple encrypted file - type unknown.");
+        }
+        return pbe;
+    }
+
+    /**
+     * Reads the encrypted data list of a message and returns the encrypted data for the private key.
+     */
+    private static PGPPublicKeyEncryptedData findEncryptedData(InputStream dataInputStream, PGPPrivateKey privateKey)
+            throws IOException {
+        dataInputStream = PGPUtil.getDecoderStream(dataInputStream);
+        JcaPGPObjectFactory encryptedFactory = new JcaPGPObjectFactory(dataInputStream);
+
+        PGPEncryptedDataList enc;
+        Object obj = encryptedFactory.nextObject();
+        //
+        // the first object might be a PGP marker packet.
+        //
+        if (obj instanceof PGPEncryptedDataList) {
+            enc = (PGPEncryptedDataList) obj;
+        } else {
+            enc = (PGPEncryptedDataList) encryptedFactory.nextObject();
+        }
+
+        //
+        // find the secret key
+        //
+        Iterator iter = enc.getEncryptedDataObjects();
+        PGPPublicKeyEncryptedData pbe = null;
+
+        while (pbe == null && iter.hasNext()) {
+            PGPPublicKeyEncryptedData current = (PGPPublicKeyEncryptedData) iter.next();
+            if (current.getKeyID() == privateKey.getKeyID()) {
+                pbe = current;
+                break;
+            }
+        }
+
+        if (pbe == null) {
+            throw new IllegalStateException("Input can't be decrypted with the provided key.");
+        }
+        return pbe;
+    }
+
 
     //
-    // ENCODING
+    // BATCH
     //
 
-    private static byte[] toLiteralZipByteArray(InputStream in, String fileName)
-            throws IOException {
-        return toLiteralZipByteArray(in, fileName, new Date());
+    /**
+     * Encrypts the files matching <code>pathName</code>, which may hold the wildcards of {@link FileUtility#Dir}.
+     *
+     * @see #encryptFiles(List, String, String[], EncryptionOptions, int)
+     */
+    public static PgpBatchReport encryptFiles(String pathName, String outputDirectory, String[] publicKeyFileName,
+                                              EncryptionOptions options, int threads) {
+        return encryptFiles(listFiles(pathName), outputDirectory, publicKeyFileName, options, threads);
     }
 
-    private static byte[] toLiteralZipByteArray(InputStream in, String fileName, Date lastModified)
-            throws IOException {
-        PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(CompressionAlgorithmTags.ZIP);
-        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-        OutputStream outputStream = comData.open(bOut);
-        writeStreamToLiteralData(outputStream, in, fileName, lastModified);
-        comData.close();
-        return bOut.toByteArray();
+    /**
+     * Encrypts each input file to <code>outputDirectory/name.pgp</code>, <code>threads</code> files at a time, or as
+     * many as there are processors when it is 0.  The keys are read once, and each output is written to a temporary
+     * file that is renamed into place when its file succeeds.  A failed file does not stop the batch; check the report.
+     */
+    public static PgpBatchReport encryptFiles(List<String> inputFileNames, String outputDirectory,
+                                              String[] publicKeyFileName, EncryptionOptions options, int threads) {
+        PGPPublicKey[] publicKeys = new PGPPublicKey[publicKeyFileName.length];
+        for (int i = 0; i < publicKeyFileName.length; i++) {
+            publicKeys[i] = readPublicKeyFile(publicKeyFileName[i]);
+        }
+
+        return new PgpBatch(threads).run(inputFileNames, outputDirectory, name -> name + ENCRYPTED_EXTENSION,
+                (inputStream, inputFileName, outputStream) ->
+                        encrypt(inputStream, inputFileName, outputStream, publicKeys, options));
     }
 
-    private static void writeStreamToLiteralData(OutputStream outputStream, InputStream inputStream, String fileName,
-                                                 Date lastModified) {
-        PGPLiteralDataGenerator lData = new PGPLiteralDataGenerator();
+    /**
+     * Decrypts the files matching <code>pathName</code>, which may hold the wildcards of {@link FileUtility#Dir}.
+     *
+     * @see #decryptFiles(List, String, String, String, int, String...)
+     */
+    public static PgpBatchReport decryptFiles(String pathName, String outputDirectory, String privateKeyFileName,
+                                              String password, int threads, String... verificationKeyFileName) {
+        return decryptFiles(listFiles(pathName), outputDirectory, privateKeyFileName, password, threads,
+                verificationKeyFileName);
+    }
+
+    /**
+     * Decrypts each input file to <code>outputDirectory</code>, named without its .pgp, .gpg or .asc extension, or
+     * with .out appended when it has none of them.  When verification key files are given every file must be signed
+     * by a key in their rings, as with {@link #decryptAndVerifyWithKeyRings}.  A file fails when its integrity check
+     * fails.  Threads, keys and temporary files are handled as by
+     * {@link #encryptFiles(List, String, String[], EncryptionOptions, int)}.
+     */
+    public static PgpBatchReport decryptFiles(List<String> inputFileNames, String outputDirectory,
+                                              String privateKeyFileName, String password, int threads,
+                                              String... verificationKeyFileName) {
+        PGPPrivateKey privateKey = readPrivateKey(privateKeyFileName, password);
+        PGPPublicKeyRingCollection[] verificationKeyRings = readPublicKeyRingFiles(verificationKeyFileName);
+
+        return new PgpBatch(threads).run(inputFileNames, outputDirectory, PgpUtility::decryptedFileName,
+                (inputStream, inputFileName, outputStream) -> {
+                    if (verificationKeyRings.length > 0) {
+                        decryptAndVerifyWithKeyRings(inputStream, outputStream, privateKey, verificationKeyRings);
+                    } else {
+                        PGPPublicKeyEncryptedData pbe = decryptLiteralData(inputStream, outputStream, privateKey);
+                        if (pbe.isIntegrityProtected() && !pbe.verify()) {
+                            throw new IllegalStateException("Message failed integrity check.");
+                        }
+                    }
+                });
+    }
+
+    private static String decryptedFileName(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot > 0 && ENCRYPTED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            return name.substring(0, dot);
+        }
+        return name + ".out";
+    }
+
+    private static List<String> listFiles(String pathName) {
+        File path = new File(pathName).getAbsoluteFile();
+        if (!path.getParentFile().isDirectory()) {
+            throw new IllegalArgumentException("No directory for " + pathName);
+        }
         try {
-            byte[] bytes = IOUtils.toByteArray(inputStream);
-            OutputStream pOut = lData.open(outputStream, PGPLiteralDataGenerator.BINARY, fileName, bytes.length,
-                    lastModified);
-            IOUtils.write(bytes, pOut);
-            pOut.close();
-            inputStream.close(); // TODO should this be closed here?
+            String[] fileNames = FileUtility.Dir(path.getPath());
+            Arrays.sort(fileNames);
+            List<String> files = new ArrayList<String>();
+            for (String fileName : fileNames) {
+                if (new File(fileName).isFile()) {
+                    files.add(fileName);
+                }
+            }
+            return files;
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
-}
\ No newline at end of file
+
+
+    //
+    // ENCODING
+    //
+
+    /**
+     * Writes an encrypted message for the public keys, signed when <code>signatureGenerator</code> is not null.
+     */
+    private static void writeEncryptedMessage(InputStream inputStream, String inputFileName, OutputStream outputStream,
+                                              PGPPublicKey[] publicKey, PGPSignatureGenerator signatureGenerator,
+                                              EncryptionOptions options) {
+        boolean armor = options.isArmor();
+        if (armor) {
+            outputStream = new ArmoredOutputStream(outputStream);
+        }
+
+        try {
+            PGPEncryptedDataGenerator encGen = new PGPEncryptedDataGenerator(
+                    new JcePGPDataEncryptorBuilder(options.getCipher().getTag())
+                            .setWithIntegrityPacket(options.isIntegrityCheck())
+                            .setSecureRandom(new SecureRandom())
+                            .setProvider(PROVIDER));
+
+            for (int i = 0; i < publicKey.length; i++) {
+                encGen.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(publicKey[i]).setProvider(PROVIDER));
+            }
+
+            OutputStream encryptedOutputStream = encGen.open(outputStream, new byte[BUFFER_SIZE]);
+            writeLiteralData(encryptedOutputStream, inputStream, inputFileName, new Date(), signatureGenerator, options);
+            encryptedOutputStream.close();
+
+            if (armor) {
+                outputStream.close();
+            }
+        } catch (IOException | PGPException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the input as a literal data packet, inside a compressed data packet unless the compression is NONE or
+     * automatic compression finds the input incompressible.  Automatic compression reads the first block of the input
+     * ahead to decide, unless the extension of the file name already shows it is compressed; otherwise the input is
+     * piped as it arrives.  With a signature generator the literal data is preceded by a one-pass signature packet and
+     * followed by the signature, both inside the compressed data.
+     */
+    private static void writeLiteralData(OutputStream outputStream, InputStream inputStream, String fileName,
+                                         Date lastModified, PGPSignatureGenerator signatureGenerator,
+                                         EncryptionOptions options)
+            throws IOException, PGPException {
+        EncryptionOptions.Compression compression = options.getCompression();
+        byte[] sample = new byte[0];
+        int sampleLength = 0;
+        if (options.isAutoCompression() && compression != EncryptionOptions.Compression.NONE) {
+            if (hasCompressedExtension(fileName)) {
+                compression = EncryptionOptions.Compression.NONE;
+            } else {
+                sample = new byte[COMPRESSIBILITY_SAMPLE_SIZE];
+                sampleLength = readFully(inputStream, sample);
+                if (!isCompressible(sample, sampleLength)) {
+                    compression = EncryptionOptions.Compression.NONE;
+                }
+            }
+        }
+
+        PGPCompressedDataGenerator comData = null;
+        OutputStream literalParent = outputStream;
+        if (compression != EncryptionOptions.Compression.NONE) {
+            comData = new PGPCompressedDataGenerator(compression.getTag(), options.getCompressionLevel());
+            literalParent = comData.open(outputStream, new byte[BUFFER_SIZE]);
+        }
+
+        if (signatureGenerator != null) {
+            signatureGenerator.generateOnePassVersion(false).encode(literalParent);
+        }
+
+        PGPLiteralDataGenerator lData = new PGPLiteralDataGenerator();
+        OutputStream pOut = lData.open(literalParent, PGPLiteralDataGenerator.BINARY, fileName, lastModified,
+                new byte[BUFFER_SIZE]);
+        pOut.write(sample, 0, sampleLength);
+        if (signatureGenerator != null) {
+            signatureGenerator.update(sample, 0, sampleLength);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = inputStream.read(buffer)) >= 0) {
+                signatureGenerator.update(buffer, 0, length);
+                pOut.write(buffer, 0, length);
+            }
+        } else {
+            pipe(inputStream, pOut);
+        }
+        pOut.close();
+        if (signatureGenerator != null) {
+            signatureGenerator.generate().encode(literalParent);
+        }
+        if (comData != null) {
+            comData.close();
+        }
+        inputStream.close(); // TODO should this be closed here?
+    }
+
+    static boolean hasCompressedExtension(String fileName) {
+        int dot = fileName == null ? -1 : fileName.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Deflates the sample at the fastest level and reports whether it shrank by more than 5%.
+     */
+    static boolean isCompressible(byte[] sample, int length) {
+        if (length == 0) {
+            return true;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(buffer);
+            }
+            return compressedLength < length * INCOMPRESSIBLE_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int length = 0;
+        int count;
+        while (length < buffer.length && (count = inputStream.read(buffer, length, buffer.length - length)) >= 0) {
+            length += count;
+        }
+        return length;
+    }
+
+    private static void pipe(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = inputStream.read(buffer)) >= 0) {
+            outputStream.write(buffer, 0, length);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.groovyutil.record;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * ByteCharSequence is a reusable, trimmed character view over a range of bytes encoded in a single byte character set
+ * such as ASCII, ISO-8859-1 or an EBCDIC code page.  Characters are decoded through a 256 entry table as they are
+ * read, so parsing a field does not copy it into a String.
+ */
+final class ByteCharSequence implements CharSequence {
+
+    private final char[] decodeTable;
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    ByteCharSequence(char[] decodeTable) {
+        this.decodeTable = decodeTable;
+    }
+
+    /**
+     * Builds the byte to char table for a single byte charset.
+     *
+     * @throws IllegalArgumentException if the charset may encode a character in more than one byte
+     */
+    static char[] decodeTable(Charset charset) {
+        if (charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            throw new IllegalArgumentException("Charset " + charset + " is not a single byte character set");
+        }
+
+        char[] table = new char[256];
+        for (int i = 0; i < table.length; i++) {
+            String decoded = new String(new byte[]{(byte) i}, charset);
+            table[i] = decoded.length() == 1 ? decoded.charAt(0) : '\uFFFD';
+        }
+        return table;
+    }
+
+    /**
+     * Points this sequence at <code>buffer[offset, offset + length)</code>, excluding leading and trailing whitespace.
+     */
+    ByteCharSequence reset(ByteBuffer buffer, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && decodeTable[buffer.get(start) & 0xFF] <= ' ') {
+            start++;
+        }
+        while (end > start && decodeTable[buffer.get(end - 1) & 0xFF] <= ' ') {
+            end--;
+        }
+
+        this.buffer = buffer;
+        this.offset = start;
+        this.length = end - start;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " length " + length);
+        }
+        return decodeTable[buffer.get(offset + index) & 0xFF];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = decodeTable[buffer.get(offset + i) & 0xFF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,91 @@
+package org.groovyutil.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ChannelLineWriter writes lines of characters to a file through large NIO buffers: characters are gathered into a
+ * char buffer, encoded in bulk and written to a FileChannel, so each line costs an array copy rather than a write.
+ */
+final class ChannelLineWriter implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private final char[] lineSeparator;
+
+    ChannelLineWriter(Path path, Charset charset, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.encoder = charset.newEncoder();
+        this.chars = CharBuffer.allocate(bufferSize);
+        this.bytes = ByteBuffer.allocateDirect((int) Math.ceil(bufferSize * (double) encoder.maxBytesPerChar()));
+        this.lineSeparator = System.lineSeparator().toCharArray();
+    }
+
+    void write(char[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int count = Math.min(length, chars.remaining());
+            chars.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    void writeLine(char[] buffer, int offset, int length) throws IOException {
+        write(buffer, offset, length);
+        write(lineSeparator, 0, lineSeparator.length);
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+        }
+        chars.compact();
+        drain();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            encode(true);
+        } finally {
+            channel.close();
+        }
+    }
+}
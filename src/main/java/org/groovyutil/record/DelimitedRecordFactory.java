@@ -2,24 +2,39 @@ package org.groovyutil.record;
 
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class DelimitedRecordFactory extends RecordFactory{
 
@@ -29,40 +44,392 @@ public class DelimitedRecordFactory extends RecordFactory{
     public Character quoteChar = '\t';
     public String lineSeparator = "\r\n";
 
-    protected static TreeMap<String, TreeMap> CachedFieldsByClassMap = new TreeMap<String, TreeMap>();
-//    todo add support for header column lookup instead of ordinal position.
-//    private static TreeMap<String, TreeMap> BeanFieldClassNameMap = new TreeMap<String, TreeMap>();
+    /**
+     * When true, fields with a {@link DataField#name()} are bound to the column with that name in the first row of
+     * the file, ignoring case, rather than to the column at their id.  Fields without a name still bind by id.
+     */
+    public boolean mapByHeaderName = false;
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The columns of a file that are bound to bean fields.  The parser is told to select only <code>indexes</code>, so
+     * unused columns are skipped without creating Strings, and each parsed row holds the selected columns in that
+     * order.  <code>fields[i]</code> is bound from <code>row[positions[i]]</code>.
+     */
+    static class ColumnSelection {
+        final int[] indexes;
+        final BeanField[] fields;
+        final int[] positions;
+
+        ColumnSelection(int[] indexes, BeanField[] fields, int[] positions) {
+            this.indexes = indexes;
+            this.fields = fields;
+            this.positions = positions;
+        }
+    }
 
     public <T> ArrayList<T> getRecordListByPositionFromFile(String filename, Class<T> beanClass) throws Exception {
-        TreeMap<Integer, BeanField> idDataFieldIdMap = getIdDataFieldMapByClass(beanClass);
-        List<String[]> lines = parseFileToList(filename);
+        RecordSchema<T> schema = RecordSchema.of(beanClass);
+        ColumnSelection columns = selectColumns(filename, schema);
+        List<String[]> lines = parseFileToList(filename, columns);
 
         ArrayList<T> beans = new ArrayList<T>();
 
         long startTime = System.currentTimeMillis();
         for (int lineCnt = headerRows; lineCnt < lines.size()-trailerRows; lineCnt++) {
-            T bean = beanClass.newInstance();
+            beans.add(createBeanFromLine(lines.get(lineCnt), schema, columns, lineCnt));
+        }
+        logger.info("Object Creating Time = {}", System.currentTimeMillis() - startTime);
+        return beans;
+    }
+
+    /**
+     * Returns an iterator that parses the file one row at a time, so only the current row and a lookahead buffer of
+     * <code>trailerRows</code> rows are held in memory.  The file is closed when the last record has been read; close
+     * the iterator explicitly when abandoning it early.
+     */
+    public <T> RecordIterator<String[], T> getRecordIteratorByPositionFromFile(String filename, Class<T> beanClass) throws Exception {
+        final RecordSchema<T> schema = RecordSchema.of(beanClass);
+        final ColumnSelection columns = selectColumns(filename, schema);
+        final CsvParser parser = createParser(columns);
+        parser.beginParsing(new FileReader(filename));
+
+        return new RecordIterator<String[], T>(headerRows, trailerRows) {
+            @Override
+            protected String[] readRow() {
+                return parser.parseNext();
+            }
+
+            @Override
+            protected T createRecord(String[] row, long lineCnt) throws Exception {
+                return createBeanFromLine(row, schema, columns, lineCnt);
+            }
+
+            @Override
+            protected void closeSource() {
+                parser.stopParsing();
+            }
+        };
+    }
+
+    /**
+     * Returns a sequential stream of records backed by {@link #getRecordIteratorByPositionFromFile}.  Use the stream
+     * in a try-with-resources block when it may not be consumed to the end.
+     */
+    public <T> Stream<T> getRecordStreamByPositionFromFile(String filename, Class<T> beanClass) throws Exception {
+        return getRecordIteratorByPositionFromFile(filename, beanClass).stream();
+    }
 
-            String[] currentLine = lines.get(lineCnt);
-            int fieldsToProcess = Math.min(idDataFieldIdMap.size(), currentLine.length);
+    /**
+     * Parses the file one row at a time, handing each record to the consumer as soon as it has been created.
+     *
+     * @return the number of records processed
+     */
+    public <T> long processRecordsByPositionFromFile(String filename, Class<T> beanClass, Consumer<? super T> consumer) throws Exception {
+        long recordCnt = 0;
+        long startTime = System.currentTimeMillis();
+
+        try (RecordIterator<String[], T> iterator = getRecordIteratorByPositionFromFile(filename, beanClass)) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                recordCnt++;
+            }
+        }
+
+        logger.info("Parse and Object Creating Time = {} records = {}", System.currentTimeMillis() - startTime, recordCnt);
+        return recordCnt;
+    }
+
+    /**
+     * Parses the file in parallel on a ForkJoin pool with one thread per available processor, returning the records
+     * in file order.
+     */
+    public <T> ArrayList<T> getRecordListByPositionFromFileParallel(String filename, Class<T> beanClass) throws Exception {
+        return getRecordListByPositionFromFileParallel(filename, beanClass, Runtime.getRuntime().availableProcessors(), true);
+    }
 
-            for (int fieldCnt = 0; fieldCnt < fieldsToProcess; fieldCnt++) {
+    /**
+     * Splits the file into byte ranges on line boundaries and parses and binds each range on a ForkJoin pool.  Header
+     * and trailer rows are located by scanning for line feeds, so this mode requires one record per line; quoted
+     * values may not span lines.  When <code>ordered</code> is false records are appended as each chunk completes,
+     * which avoids waiting on slow chunks but loses file order.
+     */
+    public <T> ArrayList<T> getRecordListByPositionFromFileParallel(String filename, Class<T> beanClass, int parallelism,
+                                                                    boolean ordered) throws Exception {
+        final RecordSchema<T> schema = RecordSchema.of(beanClass);
+        final ColumnSelection columns = selectColumns(filename, schema);
+        final Path path = Paths.get(filename);
+        long[] chunkOffsets = getChunkOffsets(path, parallelism * CHUNKS_PER_THREAD);
+        int chunkCnt = chunkOffsets.length - 1;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ExecutorCompletionService<ChunkResult<T>> completionService = new ExecutorCompletionService<>(pool);
+        List<Future<ChunkResult<T>>> futures = new ArrayList<>(chunkCnt);
 
+        long startTime = System.currentTimeMillis();
+        try {
+            for (int chunk = 0; chunk < chunkCnt; chunk++) {
+                final int chunkId = chunk;
+                final long chunkStart = chunkOffsets[chunk];
+                final long chunkEnd = chunkOffsets[chunk + 1];
+                futures.add(completionService.submit(
+                        () -> parseChunk(path, chunkId, chunkStart, chunkEnd, schema, columns)));
+            }
+
+            ArrayList<T> beans = new ArrayList<T>();
+            long parseTime = 0;
+            long objectCreatingTime = 0;
+            for (int chunk = 0; chunk < chunkCnt; chunk++) {
+                Future<ChunkResult<T>> future = ordered ? futures.get(chunk) : completionService.take();
+                ChunkResult<T> result;
                 try {
-                    BeanField beanField = idDataFieldIdMap.get(fieldCnt);
-                    String beanFieldStringValue = currentLine[fieldCnt];
-                    setBeanField(bean, beanField, beanFieldStringValue);
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
                 }
-                catch (Exception e) {
-                    logger.error("fieldIdMap.size() = {} line.length = {} lineCnt = {}", idDataFieldIdMap.size(), currentLine.length, lineCnt);
+                beans.addAll(result.beans);
+                parseTime += result.parseTime;
+                objectCreatingTime += result.objectCreatingTime;
+            }
+
+            logger.info("Parse Time = {} Object Creating Time = {} summed over {} chunks", parseTime, objectCreatingTime, chunkCnt);
+            logger.info("Parallel Elapsed Time = {} records = {}", System.currentTimeMillis() - startTime, beans.size());
+            return beans;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static class ChunkResult<T> {
+        ArrayList<T> beans = new ArrayList<T>();
+        long parseTime;
+        long objectCreatingTime;
+    }
+
+    private <T> ChunkResult<T> parseChunk(Path path, int chunkId, long chunkStart, long chunkEnd,
+                                          RecordSchema<T> schema, ColumnSelection columns) throws Exception {
+        ChunkResult<T> result = new ChunkResult<T>();
+        CsvParser parser = createParser(columns);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(chunkStart);
+            InputStream inputStream = new BoundedInputStream(Channels.newInputStream(channel), chunkEnd - chunkStart);
+            parser.beginParsing(new InputStreamReader(inputStream, Charset.defaultCharset()));
+
+            long rowCnt = 0;
+            while (true) {
+                long parseStart = System.nanoTime();
+                String[] row = parser.parseNext();
+                long parseEnd = System.nanoTime();
+                result.parseTime += parseEnd - parseStart;
+                if (row == null) {
+                    break;
+                }
+
+                try {
+                    result.beans.add(createBeanFromLine(row, schema, columns, rowCnt++));
+                } catch (Exception e) {
+                    logger.error("Chunk {} starting at byte {} failed at chunk row {}", chunkId, chunkStart, rowCnt - 1);
                     throw e;
                 }
+                result.objectCreatingTime += System.nanoTime() - parseEnd;
+            }
+        } finally {
+            parser.stopParsing();
+        }
 
+        result.parseTime /= 1000000;
+        result.objectCreatingTime /= 1000000;
+        logger.info("Chunk {} bytes {}-{} Parse Time = {} Object Creating Time = {} records = {}", chunkId, chunkStart,
+                chunkEnd, result.parseTime, result.objectCreatingTime, result.beans.size());
+        return result;
+    }
+
+    /**
+     * Returns the byte offsets of the chunk boundaries.  The first offset follows the header rows, the last precedes
+     * the trailer rows and every boundary falls immediately after a line feed.
+     */
+    long[] getChunkOffsets(Path path, int chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            long dataStart = 0;
+            for (int headerCnt = 0; headerCnt < headerRows && dataStart < size; headerCnt++) {
+                long lineFeed = findLineFeed(channel, dataStart, size);
+                dataStart = lineFeed < 0 ? size : lineFeed + 1;
             }
-            beans.add(bean);
+
+            long dataEnd = size;
+            if (trailerRows > 0) {
+                long lineEnd = size > 0 && readByte(channel, size - 1) == '\n' ? size - 1 : size;
+                for (int trailerCnt = 0; trailerCnt < trailerRows && lineEnd > dataStart; trailerCnt++) {
+                    lineEnd = findLineFeedBackward(channel, dataStart, lineEnd);
+                }
+                dataEnd = Math.max(dataStart, lineEnd < dataStart ? dataStart : lineEnd + 1);
+            }
+
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, (dataEnd - dataStart) / Math.max(1, chunks) + 1);
+            ArrayList<Long> offsets = new ArrayList<Long>();
+            offsets.add(dataStart);
+            long offset = dataStart;
+            while (offset + chunkSize < dataEnd) {
+                long lineFeed = findLineFeed(channel, offset + chunkSize, dataEnd);
+                if (lineFeed < 0 || lineFeed + 1 >= dataEnd) {
+                    break;
+                }
+                offset = lineFeed + 1;
+                offsets.add(offset);
+            }
+            offsets.add(dataEnd);
+
+            long[] chunkOffsets = new long[offsets.size()];
+            for (int i = 0; i < chunkOffsets.length; i++) {
+                chunkOffsets[i] = offsets.get(i);
+            }
+            return chunkOffsets;
         }
-        logger.info("Object Creating Time = {}", System.currentTimeMillis() - startTime);
-        return beans;
+    }
+
+    private static long findLineFeed(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return -1;
+    }
+
+    private static long findLineFeedBackward(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long end = to;
+        while (end > from) {
+            long start = Math.max(from, end - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (end - start));
+            channel.read(buffer, start);
+            for (int i = (int) (end - start) - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return from - 1;
+    }
+
+    private static byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        return buffer.get(0);
+    }
+
+    /**
+     * Resolves the column of every {@link DataField#input()} field, by header name when {@link #mapByHeaderName} is
+     * set and otherwise by id.  This is done once per file, before any records are parsed.
+     */
+    <T> ColumnSelection selectColumns(String filename, RecordSchema<T> schema) throws Exception {
+        TreeMap<String, Integer> headerIndexes = mapByHeaderName ? readHeaderIndexes(filename) : null;
+
+        ArrayList<BeanField> fields = new ArrayList<BeanField>();
+        ArrayList<Integer> fieldIndexes = new ArrayList<Integer>();
+        for (BeanField beanField : schema.getDataFields()) {
+            if (!beanField.dataField.input()) {
+                continue;
+            }
+
+            int index = beanField.dataField.id();
+            String name = beanField.dataField.name();
+            if (headerIndexes != null && !name.isEmpty()) {
+                Integer headerIndex = headerIndexes.get(name.trim());
+                if (headerIndex == null) {
+                    throw new Exception("Header column " + name + " not found in " + filename + " for field "
+                            + beanField.field.getName() + " of class " + schema.getBeanClass().getName());
+                }
+                index = headerIndex;
+            }
+            fields.add(beanField);
+            fieldIndexes.add(index);
+        }
+
+        LinkedHashMap<Integer, Integer> positionsByIndex = new LinkedHashMap<Integer, Integer>();
+        int[] positions = new int[fields.size()];
+        for (int fieldCnt = 0; fieldCnt < positions.length; fieldCnt++) {
+            Integer index = fieldIndexes.get(fieldCnt);
+            Integer position = positionsByIndex.get(index);
+            if (position == null) {
+                position = positionsByIndex.size();
+                positionsByIndex.put(index, position);
+            }
+            positions[fieldCnt] = position;
+        }
+
+        int[] indexes = new int[positionsByIndex.size()];
+        int indexCnt = 0;
+        for (Integer index : positionsByIndex.keySet()) {
+            indexes[indexCnt++] = index;
+        }
+        return new ColumnSelection(indexes, fields.toArray(new BeanField[fields.size()]), positions);
+    }
+
+    private TreeMap<String, Integer> readHeaderIndexes(String filename) throws Exception {
+        if (headerRows < 1) {
+            throw new Exception("mapByHeaderName requires at least one header row");
+        }
+
+        CsvParser parser = createParser();
+        String[] header;
+        try {
+            parser.beginParsing(new FileReader(filename));
+            header = parser.parseNext();
+        } finally {
+            parser.stopParsing();
+        }
+        if (header == null) {
+            throw new Exception("No header row found in " + filename);
+        }
+
+        TreeMap<String, Integer> headerIndexes = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        for (int columnCnt = 0; columnCnt < header.length; columnCnt++) {
+            if (header[columnCnt] != null && !headerIndexes.containsKey(header[columnCnt].trim())) {
+                headerIndexes.put(header[columnCnt].trim(), columnCnt);
+            }
+        }
+        return headerIndexes;
+    }
+
+    <T> T createBeanFromLine(String[] currentLine, RecordSchema<T> schema, ColumnSelection columns, long lineCnt) throws Exception {
+        T bean = schema.newInstance();
+
+        for (int fieldCnt = 0; fieldCnt < columns.fields.length; fieldCnt++) {
+            int position = columns.positions[fieldCnt];
+            if (position >= currentLine.length) {
+                continue;
+            }
+
+            try {
+                setBeanField(bean, columns.fields[fieldCnt], currentLine[position]);
+            }
+            catch (Exception e) {
+                logger.error("columns.length = {} line.length = {} lineCnt = {}", columns.indexes.length, currentLine.length, lineCnt);
+                throw e;
+            }
+
+        }
+        return bean;
     }
 
     public void writeRecordListToDelimitedFile(String filename, ArrayList<? extends Object> beanList) throws IOException {
@@ -75,7 +442,7 @@ public class DelimitedRecordFactory extends RecordFactory{
                 outputHeaderRow(writer, beanList.get(0).getClass());
             }
 
-            TreeMap<Integer, BeanField> idDataFieldIdMap = getIdDataFieldMapByClass(beanList.get(0).getClass());
+            NavigableMap<Integer, BeanField> idDataFieldIdMap = getIdDataFieldMapByClass(beanList.get(0).getClass());
 
             for (Object bean : beanList) {
 
@@ -116,8 +483,8 @@ public class DelimitedRecordFactory extends RecordFactory{
         }
     }
 
-    protected void outputHeaderRow(BufferedWriter writer, Class beanClass) throws IOException {
-        TreeMap<Integer, BeanField> idDataFieldIdMap = getIdDataFieldMapByClass(beanClass);
+    protected void outputHeaderRow(BufferedWriter writer, Class<?> beanClass) throws IOException {
+        NavigableMap<Integer, BeanField> idDataFieldIdMap = getIdDataFieldMapByClass(beanClass);
 
         boolean first = true;
         for (BeanField beanField : idDataFieldIdMap.values()) {
@@ -131,12 +498,8 @@ public class DelimitedRecordFactory extends RecordFactory{
         writer.newLine();
     }
 
-    private List<String[]> parseFileToList(String filename) throws Exception {
-        CsvParserSettings parserSettings = new CsvParserSettings();
-        parserSettings.getFormat().setDelimiter(delimiterChar);
-        parserSettings.getFormat().setLineSeparator(lineSeparator);
-        parserSettings.getFormat().setQuote(quoteChar);
-        CsvParser parser = new CsvParser(parserSettings);
+    private List<String[]> parseFileToList(String filename, ColumnSelection columns) throws Exception {
+        CsvParser parser = createParser(columns);
 
         long startTime = System.currentTimeMillis();
         List<String[]> lines = parser.parseAll(new FileReader(filename));
@@ -145,32 +508,35 @@ public class DelimitedRecordFactory extends RecordFactory{
         return lines;
     }
 
-    protected <T> TreeMap<Integer, BeanField> getIdDataFieldMapByClass(Class<T> beanClass ) {
-
-        Class clazz = beanClass;
-        TreeMap<Integer, BeanField> idDataFieldIdMap = CachedFieldsByClassMap.get(beanClass.getName());
-
-        if (idDataFieldIdMap == null) {
-            idDataFieldIdMap = new TreeMap<Integer, BeanField>();
-
-            do {
-                for (Field field : clazz.getDeclaredFields()) {
-                    DataField annotation = (DataField) field.getAnnotation(DataField.class);
-                    if (annotation != null) {
-                        BeanField beanField = new BeanField();
-                        beanField.field = field;
-                        beanField.dataField = annotation;
-                        idDataFieldIdMap.put(annotation.id(), beanField);
-                    }
-                }
-                clazz = clazz.getSuperclass();
-
-            } while (clazz != null);
+    protected CsvParser createParser() {
+        return new CsvParser(createParserSettings());
+    }
 
-            CachedFieldsByClassMap.put(beanClass.getName(), idDataFieldIdMap);
+    /**
+     * Creates a parser that only reads the selected columns.
+     */
+    CsvParser createParser(ColumnSelection columns) {
+        CsvParserSettings parserSettings = createParserSettings();
+        if (columns.indexes.length > 0) {
+            Integer[] indexes = new Integer[columns.indexes.length];
+            for (int indexCnt = 0; indexCnt < indexes.length; indexCnt++) {
+                indexes[indexCnt] = columns.indexes[indexCnt];
+            }
+            parserSettings.selectIndexes(indexes);
         }
-        return idDataFieldIdMap;
+        return new CsvParser(parserSettings);
+    }
+
+    protected CsvParserSettings createParserSettings() {
+        CsvParserSettings parserSettings = new CsvParserSettings();
+        parserSettings.getFormat().setDelimiter(delimiterChar);
+        parserSettings.getFormat().setLineSeparator(lineSeparator);
+        parserSettings.getFormat().setQuote(quoteChar);
+        return parserSettings;
+    }
 
+    protected <T> NavigableMap<Integer, BeanField> getIdDataFieldMapByClass(Class<T> beanClass ) {
+        return RecordSchema.of(beanClass).getDataFieldMap();
     }
 
     public int getHeaderRows() {
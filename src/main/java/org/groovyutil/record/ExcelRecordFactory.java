@@ -1,5 +1,117 @@
 package org.groovyutil.record;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class ExcelRecordFactory {
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * ExcelRecordFactory loads {@link DataField} annotated beans from the rows of an .xlsx worksheet, binding each field
+ * to the column at its id.  Sheets are read with a StAX pull parser over the sheet XML rather than through
+ * <code>XSSFWorkbook</code>, so memory use does not grow with the number of rows.  Header and trailer rows are
+ * counted over the rows that have at least one cell.
+ * <p>
+ * Numeric cells with a date format are bound directly to LocalDate and LocalDateTime fields; every other cell is
+ * bound from its text in the same way as a delimited file.
+ */
+public class ExcelRecordFactory extends RecordFactory {
+
+    public static Logger logger = LoggerFactory.getLogger(ExcelRecordFactory.class);
+
+    /**
+     * Name of the sheet to read, ignoring case, or null for the first sheet of the workbook.
+     */
+    public String sheetName = null;
+
+    public <T> ArrayList<T> getRecordListByPositionFromFile(String filename, Class<T> beanClass) throws Exception {
+        ArrayList<T> beans = new ArrayList<T>();
+        processRecordsByPositionFromFile(filename, beanClass, beans::add);
+        return beans;
+    }
+
+    /**
+     * Returns an iterator that reads the sheet one row at a time.  The workbook is closed when the last record has
+     * been read; close the iterator explicitly when abandoning it early.
+     */
+    public <T> RecordIterator<XlsxSheetReader.Row, T> getRecordIteratorByPositionFromFile(String filename, Class<T> beanClass) throws Exception {
+        final RecordSchema<T> schema = RecordSchema.of(beanClass);
+        final XlsxSheetReader sheetReader = new XlsxSheetReader(filename, sheetName);
+
+        return new RecordIterator<XlsxSheetReader.Row, T>(headerRows, trailerRows) {
+            @Override
+            protected XlsxSheetReader.Row readRow() throws Exception {
+                return sheetReader.readRow();
+            }
+
+            @Override
+            protected T createRecord(XlsxSheetReader.Row row, long lineCnt) throws Exception {
+                return createBeanFromRow(row, schema, lineCnt);
+            }
+
+            @Override
+            protected void closeSource() throws Exception {
+                sheetReader.close();
+            }
+        };
+    }
+
+    /**
+     * Returns a sequential stream of records backed by {@link #getRecordIteratorByPositionFromFile}.  Use the stream
+     * in a try-with-resources block when it may not be consumed to the end.
+     */
+    public <T> Stream<T> getRecordStreamByPositionFromFile(String filename, Class<T> beanClass) throws Exception {
+        return getRecordIteratorByPositionFromFile(filename, beanClass).stream();
+    }
+
+    /**
+     * Reads the sheet one row at a time, handing each record to the consumer as soon as it has been created.
+     *
+     * @return the number of records processed
+     */
+    public <T> long processRecordsByPositionFromFile(String filename, Class<T> beanClass, Consumer<? super T> consumer) throws Exception {
+        long recordCnt = 0;
+        long startTime = System.currentTimeMillis();
+
+        try (RecordIterator<XlsxSheetReader.Row, T> iterator = getRecordIteratorByPositionFromFile(filename, beanClass)) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                recordCnt++;
+            }
+        }
+
+        logger.info("Parse and Object Creating Time = {} records = {}", System.currentTimeMillis() - startTime, recordCnt);
+        return recordCnt;
+    }
+
+    <T> T createBeanFromRow(XlsxSheetReader.Row row, RecordSchema<T> schema, long lineCnt) throws Exception {
+        T bean = schema.newInstance();
+
+        for (BeanField beanField : schema.getDataFields()) {
+            int column = beanField.dataField.id();
+            if (!beanField.dataField.input() || column < 0 || column >= row.values.length) {
+                continue;
+            }
+
+            try {
+                LocalDateTime date = row.dates[column];
+                Class<?> type = beanField.binder.getType();
+                if (date != null && type == LocalDateTime.class) {
+                    beanField.binder.set(bean, date);
+                } else if (date != null && type == LocalDate.class) {
+                    beanField.binder.set(bean, date.toLocalDate());
+                } else {
+                    setBeanField(bean, beanField, row.values[column]);
+                }
+            }
+            catch (Exception e) {
+                logger.error("sheet row = {} column = {} lineCnt = {}", row.rowNum + 1, column, lineCnt);
+                throw e;
+            }
+        }
+        return bean;
+    }
 }
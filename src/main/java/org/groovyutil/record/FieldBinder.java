@@ -0,0 +1,157 @@
+package org.groovyutil.record;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * FieldBinder assigns values read from a record file to a single annotated bean field, and reads them back for
+ * writers.  The conversion for the field type, the date formatter and the accessors are resolved once when the binder
+ * is compiled, so binding a value makes no reflective lookups.
+ */
+public final class FieldBinder {
+
+    interface Converter {
+        Object convert(CharSequence value) throws Exception;
+    }
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final Field field;
+    private final MethodHandle setter;
+    private final MethodHandle getter;
+    private final Converter converter;
+    private final DateTimeFormatter dateTimeFormatter;
+
+    private FieldBinder(Field field, MethodHandle setter, MethodHandle getter, Converter converter,
+                        DateTimeFormatter dateTimeFormatter) {
+        this.field = field;
+        this.setter = setter;
+        this.getter = getter;
+        this.converter = converter;
+        this.dateTimeFormatter = dateTimeFormatter;
+    }
+
+    public static FieldBinder compile(Field field, String dateFormat) {
+        return compile(field, dateFormat, 0);
+    }
+
+    /**
+     * Compiles a binder for the field.  BigDecimal values without a decimal point are scaled by
+     * <code>impliedScale</code> decimal places.
+     */
+    public static FieldBinder compile(Field field, String dateFormat, int impliedScale) {
+        MethodHandle setter;
+        MethodHandle getter;
+        try {
+            field.setAccessible(true);
+            setter = MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+            getter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Class<?> type = field.getType();
+        DateTimeFormatter dtf = null;
+        Converter converter;
+
+        if (type == String.class) {
+            converter = CharSequence::toString;
+        } else if (type == Integer.class) {
+            converter = NumberDecoder::decodeInteger;
+        } else if (type == Long.class) {
+            converter = NumberDecoder::decodeLong;
+        } else if (type == BigDecimal.class) {
+            converter = value -> NumberDecoder.decodeBigDecimal(value, impliedScale);
+        } else if (type == LocalDate.class) {
+            final DateTimeFormatter formatter = dtf = DateTimeFormatter.ofPattern(dateFormat);
+            converter = value -> LocalDate.parse(value, formatter);
+        } else if (type == LocalDateTime.class) {
+            final DateTimeFormatter formatter = dtf = DateTimeFormatter.ofPattern(dateFormat);
+            converter = value -> LocalDateTime.parse(value, formatter);
+        } else {
+            converter = compileStringConstructor(type);
+        }
+
+        return new FieldBinder(field, setter, getter, converter, dtf);
+    }
+
+    private static Converter compileStringConstructor(Class<?> type) {
+        final MethodHandle constructor;
+        try {
+            constructor = MethodHandles.lookup()
+                    .unreflectConstructor(type.getDeclaredConstructor(String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // reported when a value is bound, matching the behavior for fields that are always empty
+            return value -> {
+                throw e;
+            };
+        }
+
+        return value -> {
+            try {
+                return constructor.invokeExact(value.toString());
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+    /**
+     * Converts the value to the field type and assigns it to the bean.  Numbers and dates are parsed directly from the
+     * character sequence; other types may copy it into a String.
+     */
+    public void bind(Object bean, CharSequence value) throws Exception {
+        set(bean, converter.convert(value));
+    }
+
+    /**
+     * Assigns an already converted value to the bean.
+     */
+    public void set(Object bean, Object value) throws Exception {
+        try {
+            setter.invokeExact(bean, value);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Returns the current value of the field.
+     */
+    public Object get(Object bean) throws Exception {
+        try {
+            return getter.invokeExact(bean);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public Class<?> getType() {
+        return field.getType();
+    }
+
+    /**
+     * Returns the formatter compiled for date fields, or null for other types.
+     */
+    public DateTimeFormatter getDateTimeFormatter() {
+        return dateTimeFormatter;
+    }
+}
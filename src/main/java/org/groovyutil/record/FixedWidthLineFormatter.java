@@ -0,0 +1,163 @@
+package org.groovyutil.record;
+
+import org.groovyutil.record.FixedWidthRecordFactory.FixedWidthBeanField;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * FixedWidthLineFormatter formats beans of one class into fixed width lines.  The field layout, a blank line template
+ * and the date formatters are prepared once per {@link RecordSchema}, and every line is formatted into the same reused
+ * <code>char[]</code>.  Numbers are written digit by digit, right aligned and zero filled; dates and other values are
+ * left aligned and space filled.  Positions are taken from {@link FixedWidthField#start()} as 1 based columns, and
+ * fields are written in the order given, start order for a schema, so a later field overwrites any overlap.
+ * <p>
+ * Instances are not thread safe.
+ */
+final class FixedWidthLineFormatter {
+
+    private static final class FieldFormat {
+        final FieldBinder binder;
+        final String name;
+        final int offset;
+        final int length;
+        final int scale;
+        final DateTimeFormatter dateTimeFormatter;
+
+        FieldFormat(FixedWidthBeanField beanField) {
+            FixedWidthField annotation = beanField.fixedWidthField;
+            this.binder = beanField.binder;
+            this.name = annotation.name();
+            this.offset = annotation.start() - 1;
+            this.length = annotation.length();
+            this.scale = annotation.scale();
+            this.dateTimeFormatter = beanField.binder.getDateTimeFormatter() != null
+                    ? beanField.binder.getDateTimeFormatter()
+                    : DateTimeFormatter.ofPattern(annotation.dateFormat());
+        }
+    }
+
+    private final FieldFormat[] fields;
+    private final char[] template;
+    private final char[] line;
+    private final StringBuilder scratch = new StringBuilder(64);
+
+    FixedWidthLineFormatter(Collection<FixedWidthBeanField> fixedWidthFields) {
+        this.fields = new FieldFormat[fixedWidthFields.size()];
+
+        int lineLength = 0;
+        int fieldCnt = 0;
+        for (FixedWidthBeanField beanField : fixedWidthFields) {
+            FieldFormat field = new FieldFormat(beanField);
+            fields[fieldCnt++] = field;
+            lineLength = Math.max(lineLength, field.offset + field.length);
+        }
+
+        this.template = new char[lineLength];
+        Arrays.fill(template, ' ');
+        this.line = new char[lineLength];
+    }
+
+    int getLineLength() {
+        return line.length;
+    }
+
+    /**
+     * Formats the bean into the reused line buffer and returns it.  The buffer is overwritten by the next call.
+     */
+    char[] format(Object bean) throws Exception {
+        System.arraycopy(template, 0, line, 0, line.length);
+
+        for (FieldFormat field : fields) {
+            Object object = field.binder.get(bean);
+
+            if (object == null) {
+                Arrays.fill(line, field.offset, field.offset + field.length, ' ');
+            } else if (object instanceof BigDecimal) {
+                BigInteger unscaled = ((BigDecimal) object).setScale(field.scale, RoundingMode.HALF_UP).unscaledValue();
+                if (unscaled.bitLength() < 63) {
+                    writeNumber(field, unscaled.longValue());
+                } else {
+                    writeNumber(field, unscaled.toString());
+                }
+            } else if (object instanceof Long || object instanceof Integer) {
+                writeNumber(field, ((Number) object).longValue());
+            } else if (object instanceof LocalDate) {
+                writeDate(field, LocalDateTime.of((LocalDate) object, LocalTime.MIDNIGHT));
+            } else if (object instanceof LocalDateTime) {
+                writeDate(field, (LocalDateTime) object);
+            } else {
+                writeText(field, object.toString());
+            }
+        }
+        return line;
+    }
+
+    private void writeNumber(FieldFormat field, long value) throws Exception {
+        if (value == Long.MIN_VALUE) {
+            writeNumber(field, Long.toString(value));
+            return;
+        }
+
+        int position = field.offset + field.length;
+        long remaining = Math.abs(value);
+        do {
+            if (position == field.offset) {
+                throw lengthException(field);
+            }
+            line[--position] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+
+        if (value < 0) {
+            if (position == field.offset) {
+                throw lengthException(field);
+            }
+            line[--position] = '-';
+        }
+
+        Arrays.fill(line, field.offset, position, '0');
+    }
+
+    private void writeNumber(FieldFormat field, String digits) throws Exception {
+        if (digits.length() > field.length) {
+            throw lengthException(field);
+        }
+        int padding = field.length - digits.length();
+        Arrays.fill(line, field.offset, field.offset + padding, '0');
+        digits.getChars(0, digits.length(), line, field.offset + padding);
+    }
+
+    private void writeDate(FieldFormat field, TemporalAccessor temporal) throws Exception {
+        scratch.setLength(0);
+        field.dateTimeFormatter.formatTo(temporal, scratch);
+        if (scratch.length() > field.length) {
+            throw lengthException(field);
+        }
+        scratch.getChars(0, scratch.length(), line, field.offset);
+        Arrays.fill(line, field.offset + scratch.length(), field.offset + field.length, ' ');
+    }
+
+    private void writeText(FieldFormat field, String text) throws Exception {
+        if (text.length() > field.length) {
+            throw lengthException(field);
+        }
+        text.getChars(0, text.length(), line, field.offset);
+        Arrays.fill(line, field.offset + text.length(), field.offset + field.length, ' ');
+    }
+
+    private static Exception lengthException(FieldFormat field) {
+        return new Exception("Fixed Width Field " +
+                field.name +
+                " greater than Length of field defination "
+                + field.length);
+    }
+}
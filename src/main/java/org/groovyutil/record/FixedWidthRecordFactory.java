@@ -3,31 +3,46 @@ package org.groovyutil.record;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.NavigableMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class FixedWidthRecordFactory extends RecordFactory {
 
-    class FixedWidthBeanField {
-        Field field;
-        FixedWidthField fixedWidthField;
+    /**
+     * Single byte character set used by the memory mapped reader, e.g. Cp1047 for EBCDIC extracts.
+     */
+    public Charset charset = StandardCharsets.ISO_8859_1;
+
+    /**
+     * Length of each record in bytes for files without line separators, or 0 when records end with a line feed.
+     */
+    public int recordLength = 0;
+
+    static class FixedWidthBeanField {
+        final Field field;
+        final FixedWidthField fixedWidthField;
+        final FieldBinder binder;
+
+        FixedWidthBeanField(Field field, FixedWidthField fixedWidthField, FieldBinder binder) {
+            this.field = field;
+            this.fixedWidthField = fixedWidthField;
+            this.binder = binder;
+        }
     }
 
-    private static TreeMap<String, TreeMap> CachedFieldsByClassMap = new TreeMap<String, TreeMap>();
-
     public <T> ArrayList<T> getBeanListFromFixedWidthFile(String filename, Class<T> beanClass) throws Exception {
 
         List<String> lines = FileUtils.readLines(new File(filename));
@@ -41,12 +56,101 @@ public class FixedWidthRecordFactory extends RecordFactory {
 
         return beans;
     }
+
+    /**
+     * Returns an iterator that reads the file through a memory mapped window and slices each field directly from the
+     * mapped bytes, decoding them with {@link #charset}.  Unlike {@link #getBeanListFromFixedWidthFile} the file is
+     * never loaded into memory and no String is created for a line or for date fields.  The file is closed when the
+     * last record has been read; close the iterator explicitly when abandoning it early.
+     */
+    public <T> RecordIterator<?, T> getBeanIteratorFromFixedWidthFile(String filename, Class<T> beanClass) throws Exception {
+        final RecordSchema<T> schema = RecordSchema.of(beanClass);
+        final ByteCharSequence fieldSequence = new ByteCharSequence(ByteCharSequence.decodeTable(charset));
+        final MappedRecordFile recordFile = new MappedRecordFile(Paths.get(filename), charset, recordLength,
+                MappedRecordFile.DEFAULT_WINDOW_SIZE);
+
+        return new RecordIterator<MappedRecordFile.Line, T>(headerRows, trailerRows) {
+            @Override
+            protected MappedRecordFile.Line readRow() throws Exception {
+                return recordFile.nextLine();
+            }
+
+            @Override
+            protected T createRecord(MappedRecordFile.Line line, long lineCnt) throws Exception {
+                ByteBuffer buffer = recordFile.bufferFor(line);
+                return getBeanFromFixedWidthBytes(buffer, recordFile.offsetOf(line), line.length, schema, fieldSequence);
+            }
+
+            @Override
+            protected void closeSource() throws Exception {
+                recordFile.close();
+            }
+        };
+    }
+
+    /**
+     * Returns a sequential stream of records backed by {@link #getBeanIteratorFromFixedWidthFile}.  Use the stream in
+     * a try-with-resources block when it may not be consumed to the end.
+     */
+    public <T> Stream<T> getBeanStreamFromFixedWidthFile(String filename, Class<T> beanClass) throws Exception {
+        return getBeanIteratorFromFixedWidthFile(filename, beanClass).stream();
+    }
+
+    /**
+     * Reads the file through {@link #getBeanIteratorFromFixedWidthFile}, handing each record to the consumer as soon as
+     * it has been created.
+     *
+     * @return the number of records processed
+     */
+    public <T> long processBeansFromFixedWidthFile(String filename, Class<T> beanClass, Consumer<? super T> consumer) throws Exception {
+        long recordCnt = 0;
+        long startTime = System.currentTimeMillis();
+
+        try (RecordIterator<?, T> iterator = getBeanIteratorFromFixedWidthFile(filename, beanClass)) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                recordCnt++;
+            }
+        }
+
+        logger.info("Parse and Object Creating Time = {} records = {}", System.currentTimeMillis() - startTime, recordCnt);
+        return recordCnt;
+    }
+
+    <T> T getBeanFromFixedWidthBytes(ByteBuffer buffer, int lineOffset, int lineLength, RecordSchema<T> schema,
+                                     ByteCharSequence fieldSequence) throws Exception {
+        T bean = schema.newInstance();
+
+        for (FixedWidthBeanField fixedWidthBeanField : schema.getFixedWidthFields()) {
+            FixedWidthField annotation = fixedWidthBeanField.fixedWidthField;
+
+            int startPosition = Math.min(annotation.start(), lineLength);
+            int endPosition = Math.min(annotation.start() + annotation.length(), lineLength);
+            fieldSequence.reset(buffer, lineOffset + startPosition, endPosition - startPosition);
+
+            if (fieldSequence.length() > 0) {
+                try {
+                    fixedWidthBeanField.binder.bind(bean, fieldSequence);
+                }
+                catch (Exception e) {
+                    logger.error("field string = {} annotation name  = {} annotation start = {}", fieldSequence, annotation.name(), annotation.start());
+                    throw e;
+                }
+            }
+            else {
+                //empty
+                fixedWidthBeanField.binder.set(bean, null);
+            }
+        }
+        return bean;
+    }
+
     public <T> T getBeanFromFixedWidthBuffer(String buffer, Class<T> beanClass) throws Exception {
 
-        T bean = beanClass.newInstance();
-        TreeMap<Integer, FixedWidthBeanField> fixedWidthFieldClassMap = getFixedWidthDataFieldMapByClass(beanClass);
+        RecordSchema<T> schema = RecordSchema.of(beanClass);
+        T bean = schema.newInstance();
 
-        for (FixedWidthBeanField fixedWidthBeanField : fixedWidthFieldClassMap.values()) {
+        for (FixedWidthBeanField fixedWidthBeanField : schema.getFixedWidthFields()) {
             FixedWidthField annotation = fixedWidthBeanField.fixedWidthField;
 
             if (annotation != null) {
@@ -56,163 +160,89 @@ public class FixedWidthRecordFactory extends RecordFactory {
                 String fieldString = buffer.substring(annotation.start(), endPosition).trim();
 
                 if (!"".equals(fieldString) && fieldString != null) {
-                    if (fixedWidthBeanField.field.getType() == String.class) {
-                        fixedWidthBeanField.field.set(bean, fieldString);
-                    } else if (fixedWidthBeanField.field.getType() == BigDecimal.class) {
-                        try {
-                            fixedWidthBeanField.field.set(bean, new BigDecimal(cleanNumberString(fieldString)));
-                        }
-                        catch (Exception e) {
-                            logger.error("field string = {} annotation name  = {} annotation start = {}", fieldString, annotation.name(), annotation.start());
-                            throw e;
-                        }
-                    } else if (fixedWidthBeanField.field.getType() == Integer.class) {
-                        fixedWidthBeanField.field.set(bean, new Integer(cleanNumberString(fieldString)));
-                    } else if (fixedWidthBeanField.field.getType() == LocalDate.class) {
-                        DateTimeFormatter dtf = DateTimeFormatter.ofPattern(annotation.dateFormat());
-                        fixedWidthBeanField.field.set(bean, LocalDate.parse(fieldString, dtf));
-                    } else if (fixedWidthBeanField.field.getType() == LocalDateTime.class) {
-                        DateTimeFormatter dtf = DateTimeFormatter.ofPattern(annotation.dateFormat());
-                        fixedWidthBeanField.field.set(bean, LocalDateTime.parse(fieldString, dtf));
-                    } else {
-                        Object object = fixedWidthBeanField.field.getType().getDeclaredConstructor(String.class).newInstance(fieldString);
-                        fixedWidthBeanField.field.set(bean, object);
+                    try {
+                        fixedWidthBeanField.binder.bind(bean, fieldString);
+                    }
+                    catch (Exception e) {
+                        logger.error("field string = {} annotation name  = {} annotation start = {}", fieldString, annotation.name(), annotation.start());
+                        throw e;
                     }
                 }
                 else {
                     //empty
-                    fixedWidthBeanField.field.set(bean, null);
+                    fixedWidthBeanField.binder.set(bean, null);
                 }
             }
         }
         return bean;
     }
 
-    <T> TreeMap<Integer,FixedWidthBeanField> getFixedWidthDataFieldMapByClass(Class<T> beanClass) {
-
-            Class clazz = beanClass;
-            TreeMap<Integer, FixedWidthBeanField> fixedWidthFieldClassMap = CachedFieldsByClassMap.get(beanClass.getName());
-
-            if (fixedWidthFieldClassMap == null) {
-                fixedWidthFieldClassMap = new TreeMap<Integer, FixedWidthBeanField>();
-
-                do {
-                    for (Field field : clazz.getDeclaredFields()) {
-                        FixedWidthField annotation = (FixedWidthField) field.getAnnotation(FixedWidthField.class);
-                        if (annotation != null) {
-                            FixedWidthBeanField beanField = new FixedWidthBeanField();
-                            beanField.field = field;
-                            beanField.fixedWidthField = annotation;
-                            fixedWidthFieldClassMap.put(annotation.start(), beanField);
-                        }
-                    }
-                    clazz = clazz.getSuperclass();
-
-                } while (clazz != null);
-
-                CachedFieldsByClassMap.put(beanClass.getName(), fixedWidthFieldClassMap);
-            }
-            return fixedWidthFieldClassMap;
+    <T> NavigableMap<Integer,FixedWidthBeanField> getFixedWidthDataFieldMapByClass(Class<T> beanClass) {
+        return RecordSchema.of(beanClass).getFixedWidthFieldMap();
     }
     public void writeFixedWidthBeanListToFile(String filename, ArrayList<? extends Object> fixedWidthBeanList) throws Exception {
 
-        Path outputPath = Paths.get(filename);
-        BufferedWriter writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8);
-
         if (fixedWidthBeanList.size() == 0) throw new Exception("Cannot write empty list to file");
         checkAllBeansAreSameClass(fixedWidthBeanList);
-        TreeMap<Integer, FixedWidthBeanField> fixedWidthFieldClassMap = getFixedWidthDataFieldMapByClass(fixedWidthBeanList.get(0).getClass());
 
         try {
-
-            for (Object fixedWidthBean : fixedWidthBeanList) {
-                String fixedWidthBeanString = buildStringBufferFromFixedWidthBeanFieldList(fixedWidthBean, fixedWidthFieldClassMap);
-                writer.write(fixedWidthBeanString);
-                writer.newLine();
-            }
+            writeFixedWidthBeansToFile(filename, fixedWidthBeanList.iterator());
         } catch (Exception e) {
             logger.error("Error = {}", e);
-        } finally {
-            writer.close();
         }
     }
 
-    void checkAllBeansAreSameClass(ArrayList<?> beanList) throws Exception {
-        Class previousClass = beanList.get(0).getClass();
-        for (Object bean : beanList) {
-            if (bean.getClass() != previousClass) throw new Exception("All beans must be same class for fixed width file");
-            previousClass = bean.getClass();
+    /**
+     * Writes the beans to the file one line per bean without holding them in memory.  Every bean must be of the same
+     * class.  Each line is formatted into a reused line template and written through a large NIO buffer.
+     *
+     * @return the number of lines written
+     */
+    public long writeFixedWidthBeansToFile(String filename, Stream<?> fixedWidthBeans) throws Exception {
+        try (Stream<?> beans = fixedWidthBeans) {
+            return writeFixedWidthBeansToFile(filename, beans.iterator());
         }
     }
 
-    String buildStringBufferFromFixedWidthBeanFieldList(Object fixedWidthBean, TreeMap<Integer, FixedWidthBeanField> fixedWidthFieldClassMap) throws Exception {
+    public long writeFixedWidthBeansToFile(String filename, Iterator<?> fixedWidthBeans) throws Exception {
 
-        Integer bufferSize = getBufferSize(fixedWidthFieldClassMap);
+        long startTime = System.currentTimeMillis();
+        long lineCnt = 0;
+        Class<?> beanClass = null;
+        FixedWidthLineFormatter formatter = null;
 
-        StringBuffer fixedWidthBeanStringBuffer = initializeStringBuffer(bufferSize, " ");
-        for (FixedWidthBeanField fixedWidthBeanField : fixedWidthFieldClassMap.values()) {
-            Object object = fixedWidthBeanField.field.get(fixedWidthBean);
-            FixedWidthField annotation = fixedWidthBeanField.fixedWidthField;
-            String fixedWidthString = "";
-
-            if (object != null) {
-                if (object.getClass() == BigDecimal.class) {
-                    BigDecimal bigDecimalValue = (BigDecimal) object;
-                    fixedWidthString = convertBigDecimalToFixedWidth(bigDecimalValue,
-                            annotation.name(),
-                            annotation.scale(),
-                            annotation.length());
-                }
-
-                else if (object.getClass() == Long.class || object.getClass() == Integer.class) {
-
-                    Long longValue;
+        try (ChannelLineWriter writer = new ChannelLineWriter(Paths.get(filename), StandardCharsets.UTF_8,
+                ChannelLineWriter.DEFAULT_BUFFER_SIZE)) {
 
-                    if (object.getClass() == Integer.class) longValue = ((Integer) object).longValue();
-                    else longValue = (Long) object;
-
-                    fixedWidthString = convertLongToFixedWidth(longValue,
-                            annotation.name(),
-                            annotation.length());
+            while (fixedWidthBeans.hasNext()) {
+                Object fixedWidthBean = fixedWidthBeans.next();
+                if (formatter == null) {
+                    beanClass = fixedWidthBean.getClass();
+                    formatter = new FixedWidthLineFormatter(getFixedWidthDataFieldMapByClass(beanClass).values());
+                } else if (fixedWidthBean.getClass() != beanClass) {
+                    throw new Exception("All beans must be same class for fixed width file");
                 }
 
-                else if (object.getClass() == LocalDate.class) {
-                    LocalDate localDate = (LocalDate) object;
-                    LocalDateTime localDateTime = LocalDateTime.of(localDate, LocalTime.MIDNIGHT);
-                    fixedWidthString = convertLocalDateTimeToFixedWidth(localDateTime,
-                            annotation.name(),
-                            annotation.dateFormat(),
-                            annotation.length());
-                    ;
-                }
-                else if (object.getClass() == LocalDateTime.class) {
-                    LocalDateTime localDateTime = (LocalDateTime) object;
-                    fixedWidthString = convertLocalDateTimeToFixedWidth(localDateTime,
-                            annotation.name(),
-                            annotation.dateFormat(),
-                            annotation.length());
-                }
-                else {
-                    fixedWidthString = convertObjectToFixedWidth(object, annotation.name(), annotation.length());
-                }
+                char[] line = formatter.format(fixedWidthBean);
+                writer.writeLine(line, 0, line.length);
+                lineCnt++;
             }
-            fixedWidthBeanStringBuffer.replace( annotation.start()-1,
-                    annotation.start() + annotation.length()-1,
-                    fixedWidthString);
         }
 
-        return fixedWidthBeanStringBuffer.toString();
+        logger.info("Fixed Width Write Time = {} records = {}", System.currentTimeMillis() - startTime, lineCnt);
+        return lineCnt;
     }
 
-    Integer getBufferSize(TreeMap<Integer, FixedWidthBeanField> fixedWidthFieldClassMap) {
-        FixedWidthBeanField lastField = fixedWidthFieldClassMap.lastEntry().getValue();
-        return lastField.fixedWidthField.start() + lastField.fixedWidthField.length();
+    void checkAllBeansAreSameClass(ArrayList<?> beanList) throws Exception {
+        Class previousClass = beanList.get(0).getClass();
+        for (Object bean : beanList) {
+            if (bean.getClass() != previousClass) throw new Exception("All beans must be same class for fixed width file");
+            previousClass = bean.getClass();
+        }
     }
 
-    StringBuffer initializeStringBuffer(Integer bufferSize, String initCharacter) {
-        StringBuffer stringBuffer = new StringBuffer(bufferSize);
-        stringBuffer.replace(0, bufferSize-1, initCharacter);
-        return stringBuffer;
+    String buildStringBufferFromFixedWidthBeanFieldList(Object fixedWidthBean, NavigableMap<Integer, FixedWidthBeanField> fixedWidthFieldClassMap) throws Exception {
+        return new String(new FixedWidthLineFormatter(fixedWidthFieldClassMap.values()).format(fixedWidthBean));
     }
 
     String convertObjectToFixedWidth(Object object, String name, int maxLength) throws Exception {
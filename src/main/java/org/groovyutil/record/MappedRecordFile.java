@@ -0,0 +1,130 @@
+package org.groovyutil.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedRecordFile reads the records of a file through a sliding memory mapped window, so files far larger than the
+ * heap, or than a single 2GB mapping, can be read without copying.  Records are either terminated by a line feed,
+ * optionally preceded by a carriage return, or are exactly <code>recordLength</code> bytes with no separator.
+ */
+final class MappedRecordFile implements Closeable {
+
+    static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * The position and length of one record in the file.
+     */
+    static final class Line {
+        final long start;
+        final int length;
+
+        Line(long start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final int recordLength;
+    private final byte lineFeed;
+    private final byte carriageReturn;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+    private long position;
+
+    MappedRecordFile(Path path, Charset charset, int recordLength, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.recordLength = recordLength;
+        this.lineFeed = charset.encode("\n").get(0);
+        this.carriageReturn = charset.encode("\r").get(0);
+    }
+
+    /**
+     * Returns the next record, or null at end of file.
+     */
+    Line nextLine() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+
+        if (recordLength > 0) {
+            Line line = new Line(position, (int) Math.min(recordLength, size - position));
+            position += line.length;
+            return line;
+        }
+
+        long lineStart = position;
+        long scan = lineStart;
+        while (true) {
+            if (scan >= windowEnd || scan < windowStart) {
+                if (scan >= size) {
+                    position = size;
+                    return new Line(lineStart, trimCarriageReturn(lineStart, size));
+                }
+                map(lineStart);
+                if (scan >= windowEnd) {
+                    throw new IOException("Record at byte " + lineStart + " is longer than the mapping window");
+                }
+            }
+
+            if (window.get((int) (scan - windowStart)) == lineFeed) {
+                position = scan + 1;
+                return new Line(lineStart, trimCarriageReturn(lineStart, scan));
+            }
+            scan++;
+        }
+    }
+
+    /**
+     * Returns a buffer holding the whole of the line, remapping the window if necessary.  The line begins at
+     * {@link #offsetOf(Line)} in the returned buffer.
+     */
+    ByteBuffer bufferFor(Line line) throws IOException {
+        if (line.start < windowStart || line.start + line.length > windowEnd) {
+            map(line.start);
+        }
+        return window;
+    }
+
+    int offsetOf(Line line) {
+        return (int) (line.start - windowStart);
+    }
+
+    private int trimCarriageReturn(long lineStart, long lineEnd) throws IOException {
+        if (lineEnd > lineStart) {
+            if (lineStart < windowStart || lineEnd > windowEnd) {
+                map(lineStart);
+            }
+            if (window.get((int) (lineEnd - 1 - windowStart)) == carriageReturn) {
+                lineEnd--;
+            }
+        }
+        return (int) (lineEnd - lineStart);
+    }
+
+    private void map(long start) throws IOException {
+        long length = Math.min(windowSize, size - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        windowEnd = start + length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,129 @@
+package org.groovyutil.record;
+
+import java.math.BigDecimal;
+
+/**
+ * NumberDecoder parses numeric field values in a single pass over a character sequence, skipping the <code>,</code>,
+ * <code>$</code> and space characters and accepting a leading or trailing <code>-</code> or <code>+</code> sign.
+ * Digits are accumulated directly into a long, so values of up to 18 digits are built without creating a String.
+ * Values the fast path does not recognize, such as exponents or longer numbers, fall back to
+ * {@link RecordFactory#cleanNumberString} and the String constructors, so their results and errors are unchanged.
+ */
+final class NumberDecoder {
+
+    private static final long MAX_UNSCALED = Long.MAX_VALUE / 10;
+
+    private NumberDecoder() {
+        // static class
+    }
+
+    /**
+     * Decodes a BigDecimal.  When the value has no decimal point, <code>impliedScale</code> digits are taken as the
+     * fraction, so <code>"000123456"</code> with an implied scale of 2 is <code>1234.56</code>.
+     */
+    static BigDecimal decodeBigDecimal(CharSequence value, int impliedScale) {
+        int length = value.length();
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        boolean negative = false;
+        boolean signed = false;
+        boolean trailingSign = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (trailingSign || unscaled >= MAX_UNSCALED) {
+                    return fallbackBigDecimal(value, impliedScale);
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.') {
+                if (trailingSign || scale >= 0) {
+                    return fallbackBigDecimal(value, impliedScale);
+                }
+                scale = 0;
+            } else if (c == '-' || c == '+') {
+                if (signed) {
+                    return fallbackBigDecimal(value, impliedScale);
+                }
+                signed = true;
+                trailingSign = digits > 0 || scale >= 0;
+                negative = c == '-';
+            } else if (c != ',' && c != '$' && c != ' ') {
+                return fallbackBigDecimal(value, impliedScale);
+            }
+        }
+
+        if (digits == 0) {
+            return fallbackBigDecimal(value, impliedScale);
+        }
+
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale >= 0 ? scale : impliedScale);
+    }
+
+    static Integer decodeInteger(CharSequence value) {
+        long decoded = decodeLongValue(value);
+        if (decoded == Long.MIN_VALUE || decoded < Integer.MIN_VALUE || decoded > Integer.MAX_VALUE) {
+            return Integer.valueOf(RecordFactory.cleanNumberString(value.toString()));
+        }
+        return (int) decoded;
+    }
+
+    static Long decodeLong(CharSequence value) {
+        long decoded = decodeLongValue(value);
+        if (decoded == Long.MIN_VALUE) {
+            return Long.valueOf(RecordFactory.cleanNumberString(value.toString()));
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns the decoded value, or Long.MIN_VALUE when the value must be decoded by the fallback path.
+     */
+    private static long decodeLongValue(CharSequence value) {
+        int length = value.length();
+        long result = 0;
+        int digits = 0;
+        boolean negative = false;
+        boolean signed = false;
+        boolean trailingSign = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (trailingSign || result >= MAX_UNSCALED) {
+                    return Long.MIN_VALUE;
+                }
+                result = result * 10 + (c - '0');
+                digits++;
+            } else if (c == '-' || c == '+') {
+                if (signed) {
+                    return Long.MIN_VALUE;
+                }
+                signed = true;
+                trailingSign = digits > 0;
+                negative = c == '-';
+            } else if (c != ',' && c != '$' && c != ' ') {
+                return Long.MIN_VALUE;
+            }
+        }
+
+        if (digits == 0) {
+            return Long.MIN_VALUE;
+        }
+        return negative ? -result : result;
+    }
+
+    private static BigDecimal fallbackBigDecimal(CharSequence value, int impliedScale) {
+        String numberString = RecordFactory.cleanNumberString(value.toString());
+        BigDecimal decoded = new BigDecimal(numberString);
+        if (impliedScale > 0 && numberString.indexOf('.') < 0) {
+            decoded = decoded.movePointLeft(impliedScale);
+        }
+        return decoded;
+    }
+}
@@ -5,16 +5,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
-import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 public class RecordFactory {
 
-    public class BeanField {
-        public Field field;
-        public DataField dataField;
+    public static class BeanField {
+        public final Field field;
+        public final DataField dataField;
+        public final FieldBinder binder;
+
+        BeanField(Field field, DataField dataField, FieldBinder binder) {
+            this.field = field;
+            this.dataField = dataField;
+            this.binder = binder;
+        }
     }
 
     public int headerRows = 1;
@@ -26,29 +29,10 @@ public class RecordFactory {
 
         try {
             if (value != null && !"".equals(value)) {
-
                 value = value.trim();
-
-                if (beanField.field.getType() == String.class) {
-                    beanField.field.set(bean, value);
-                } else if (beanField.field.getType() == Integer.class) {
-                    value = cleanNumberString(value);
-                    beanField.field.set(bean, new Integer(value));
-                } else if (beanField.field.getType() == BigDecimal.class) {
-                    value = cleanNumberString(value);
-                    beanField.field.set(bean, new BigDecimal(value));
-                } else if (beanField.field.getType() == LocalDate.class) {
-                    DateTimeFormatter dtf = DateTimeFormatter.ofPattern(beanField.dataField.dateFormat());
-                    beanField.field.set(bean, LocalDate.parse(value, dtf));
-                } else if (beanField.field.getType() == LocalDateTime.class) {
-                    DateTimeFormatter dtf = DateTimeFormatter.ofPattern(beanField.dataField.dateFormat());
-                    beanField.field.set(bean, LocalDateTime.parse(value, dtf));
-                } else {
-                    Object object = beanField.field.getType().getDeclaredConstructor(String.class).newInstance(value);
-                    beanField.field.set(bean, object);
-                }
+                beanField.binder.bind(bean, value);
             } else if (beanField.field != null) {
-                beanField.field.set(bean, null);
+                beanField.binder.set(bean, null);
             }
             else {
                 throw new Exception("Invalid Field ID " + beanField.dataField.id() + " for class " + bean.getClass().getName());
@@ -59,7 +43,7 @@ public class RecordFactory {
             throw e;
         }
     }
-    String cleanNumberString(String numberString) {
+    static String cleanNumberString(String numberString) {
 
         numberString = StringUtils.replace(numberString, ",", "");
         numberString = StringUtils.replace(numberString, "$", "");
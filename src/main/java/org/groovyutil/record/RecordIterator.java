@@ -0,0 +1,130 @@
+package org.groovyutil.record;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * RecordIterator reads the rows of a record file one at a time and converts each into a bean.  Header rows are skipped
+ * when iteration begins and trailer rows are held back in a lookahead buffer of <code>trailerRows + 1</code> rows, so
+ * memory use stays flat regardless of the size of the file.
+ * <p>
+ * The underlying file is closed once the last record has been read.  Callers that stop iterating early must call
+ * {@link #close()} themselves.
+ *
+ * @param <R> the raw row type produced by the parser
+ * @param <T> the bean type
+ */
+public abstract class RecordIterator<R, T> implements Iterator<T>, Closeable {
+
+    private final int headerRows;
+    private final int trailerRows;
+    private final ArrayDeque<R> lookahead;
+
+    private long lineCnt;
+    private boolean started = false;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    protected RecordIterator(int headerRows, int trailerRows) {
+        this.headerRows = headerRows;
+        this.trailerRows = trailerRows;
+        this.lookahead = new ArrayDeque<R>(trailerRows + 1);
+    }
+
+    /**
+     * Returns the next raw row from the file, or null once the file is exhausted.
+     */
+    protected abstract R readRow() throws Exception;
+
+    /**
+     * Converts a raw row into a bean.  The line count is the zero based position of the row in the file.
+     */
+    protected abstract T createRecord(R row, long lineCnt) throws Exception;
+
+    /**
+     * Releases the underlying file.  Called at most once.
+     */
+    protected abstract void closeSource() throws Exception;
+
+    @Override
+    public boolean hasNext() {
+        fill();
+        return lookahead.size() > trailerRows;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        R row = lookahead.poll();
+        try {
+            return createRecord(row, lineCnt++);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        exhausted = true;
+        try {
+            closeSource();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a sequential stream over the remaining records.  Closing the stream closes this iterator.
+     */
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    private void fill() {
+        try {
+            if (!started) {
+                started = true;
+                for (int headerCnt = 0; headerCnt < headerRows && !exhausted; headerCnt++) {
+                    if (readRow() == null) {
+                        close();
+                    }
+                    lineCnt++;
+                }
+            }
+
+            while (!exhausted && lookahead.size() <= trailerRows) {
+                R row = readRow();
+                if (row == null) {
+                    close();
+                } else {
+                    lookahead.add(row);
+                }
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.groovyutil.record;
+
+import org.groovyutil.record.FixedWidthRecordFactory.FixedWidthBeanField;
+import org.groovyutil.record.RecordFactory.BeanField;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * RecordSchema is the immutable description of a bean class used by the record factories: its {@link DataField} and
+ * {@link FixedWidthField} annotated fields together with their compiled {@link FieldBinder}s.  A schema is built once
+ * per <code>Class</code> and shared by every factory instance and thread.  Schemas are keyed by the class itself rather
+ * than its name, so a recompiled script class gets a schema of its own and never sees the fields of an earlier
+ * version.
+ *
+ * @param <T> the bean type
+ */
+public final class RecordSchema<T> {
+
+    private static final ClassValue<RecordSchema<?>> SCHEMAS = new ClassValue<RecordSchema<?>>() {
+        @Override
+        protected RecordSchema<?> computeValue(Class<?> beanClass) {
+            return new RecordSchema<>(beanClass);
+        }
+    };
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<T> beanClass;
+    private final MethodHandle constructor;
+    private final NavigableMap<Integer, BeanField> dataFieldsById;
+    private final NavigableMap<Integer, FixedWidthBeanField> fixedWidthFieldsByStart;
+
+    private RecordSchema(Class<T> beanClass) {
+        this.beanClass = beanClass;
+        this.constructor = findConstructor(beanClass);
+
+        TreeMap<Integer, BeanField> dataFields = new TreeMap<Integer, BeanField>();
+        TreeMap<Integer, FixedWidthBeanField> fixedWidthFields = new TreeMap<Integer, FixedWidthBeanField>();
+
+        Class<?> clazz = beanClass;
+        do {
+            for (Field field : clazz.getDeclaredFields()) {
+                DataField dataField = field.getAnnotation(DataField.class);
+                if (dataField != null) {
+                    dataFields.put(dataField.id(), new BeanField(field, dataField,
+                            FieldBinder.compile(field, dataField.dateFormat())));
+                }
+
+                FixedWidthField fixedWidthField = field.getAnnotation(FixedWidthField.class);
+                if (fixedWidthField != null) {
+                    fixedWidthFields.put(fixedWidthField.start(), new FixedWidthBeanField(field, fixedWidthField,
+                            FieldBinder.compile(field, fixedWidthField.dateFormat(), fixedWidthField.scale())));
+                }
+            }
+            clazz = clazz.getSuperclass();
+
+        } while (clazz != null);
+
+        this.dataFieldsById = Collections.unmodifiableNavigableMap(dataFields);
+        this.fixedWidthFieldsByStart = Collections.unmodifiableNavigableMap(fixedWidthFields);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> RecordSchema<T> of(Class<T> beanClass) {
+        return (RecordSchema<T>) SCHEMAS.get(beanClass);
+    }
+
+    private static MethodHandle findConstructor(Class<?> beanClass) {
+        try {
+            Constructor<?> constructor = beanClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // classes without an accessible no-arg constructor fail when a record is created
+            return null;
+        }
+    }
+
+    public Class<T> getBeanClass() {
+        return beanClass;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T newInstance() throws Exception {
+        if (constructor == null) {
+            return beanClass.getDeclaredConstructor().newInstance();
+        }
+
+        try {
+            return (T) constructor.invokeExact();
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Returns the {@link DataField} annotated fields keyed and ordered by id.
+     */
+    public NavigableMap<Integer, BeanField> getDataFieldMap() {
+        return dataFieldsById;
+    }
+
+    public Collection<BeanField> getDataFields() {
+        return dataFieldsById.values();
+    }
+
+    /**
+     * Returns the {@link FixedWidthField} annotated fields keyed and ordered by start position.
+     */
+    public NavigableMap<Integer, FixedWidthBeanField> getFixedWidthFieldMap() {
+        return fixedWidthFieldsByStart;
+    }
+
+    public Collection<FixedWidthBeanField> getFixedWidthFields() {
+        return fixedWidthFieldsByStart.values();
+    }
+}
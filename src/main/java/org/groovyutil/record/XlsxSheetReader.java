@@ -0,0 +1,285 @@
+package org.groovyutil.record;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * XlsxSheetReader pulls the rows of one worksheet of an .xlsx file with StAX, so only the current row, the shared
+ * strings and the styles are held in memory however large the sheet is.  Rows absent from the sheet XML, that is rows
+ * with no cells, are not returned.
+ */
+final class XlsxSheetReader implements Closeable {
+
+    private static final String SPREADSHEET_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    /**
+     * Reads both the workbook and the sheet XML, which are untrusted input, so DTDs and external entities are off.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    /**
+     * The cells of one row indexed by column.  <code>values</code> holds the cell text, or the raw number for numeric
+     * cells; <code>dates</code> holds the value of numeric cells with a date format and is null elsewhere.
+     */
+    static final class Row {
+        final int rowNum;
+        final String[] values;
+        final LocalDateTime[] dates;
+
+        Row(int rowNum, String[] values, LocalDateTime[] dates) {
+            this.rowNum = rowNum;
+            this.values = values;
+            this.dates = dates;
+        }
+    }
+
+    private final OPCPackage opcPackage;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+    private final boolean date1904;
+    private final InputStream sheetStream;
+    private final XMLStreamReader reader;
+    private final Map<Integer, Boolean> dateStyles = new HashMap<Integer, Boolean>();
+
+    private final ArrayList<String> values = new ArrayList<String>();
+    private final ArrayList<LocalDateTime> dates = new ArrayList<LocalDateTime>();
+
+    /**
+     * Opens the named sheet, or the first sheet when <code>sheetName</code> is null.
+     */
+    XlsxSheetReader(String filename, String sheetName) throws Exception {
+        this.opcPackage = OPCPackage.open(filename, PackageAccess.READ);
+        try {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            this.sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+            this.styles = xssfReader.getStylesTable();
+            this.date1904 = isDate1904(xssfReader);
+            this.sheetStream = openSheet(xssfReader, sheetName, filename);
+
+            this.reader = XML_INPUT_FACTORY.createXMLStreamReader(sheetStream);
+        } catch (Exception e) {
+            opcPackage.revert();
+            throw e;
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static InputStream openSheet(XSSFReader xssfReader, String sheetName, String filename) throws Exception {
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+        while (sheets.hasNext()) {
+            InputStream sheet = sheets.next();
+            if (sheetName == null || sheetName.equalsIgnoreCase(sheets.getSheetName())) {
+                return sheet;
+            }
+            sheet.close();
+        }
+        throw new IllegalArgumentException("Sheet " + (sheetName == null ? "" : sheetName + " ") + "not found in " + filename);
+    }
+
+    private static boolean isDate1904(XSSFReader xssfReader) throws Exception {
+        try (InputStream workbook = xssfReader.getWorkbookData()) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(workbook);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        String localName = reader.getLocalName();
+                        if ("workbookPr".equals(localName)) {
+                            String date1904 = reader.getAttributeValue(null, "date1904");
+                            return "1".equals(date1904) || "true".equalsIgnoreCase(date1904);
+                        }
+                        if ("sheets".equals(localName)) {
+                            return false;
+                        }
+                    }
+                }
+                return false;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the next row with at least one cell, or null at the end of the sheet.
+     */
+    Row readRow() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && isElement("row")) {
+                return parseRow();
+            }
+        }
+        return null;
+    }
+
+    private Row parseRow() throws XMLStreamException {
+        String rowNumber = reader.getAttributeValue(null, "r");
+        int rowNum = rowNumber == null ? -1 : Integer.parseInt(rowNumber) - 1;
+        values.clear();
+        dates.clear();
+
+        int nextColumn = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && isElement("c")) {
+                String reference = reader.getAttributeValue(null, "r");
+                int column = reference == null ? nextColumn : columnIndex(reference);
+                parseCell(column);
+                nextColumn = column + 1;
+            } else if (event == XMLStreamConstants.END_ELEMENT && isElement("row")) {
+                break;
+            }
+        }
+
+        return new Row(rowNum, values.toArray(new String[values.size()]),
+                dates.toArray(new LocalDateTime[dates.size()]));
+    }
+
+    private void parseCell(int column) throws XMLStreamException {
+        String type = reader.getAttributeValue(null, "t");
+        String style = reader.getAttributeValue(null, "s");
+        String text = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String localName = reader.getLocalName();
+                if ("v".equals(localName)) {
+                    text = reader.getElementText();
+                } else if ("is".equals(localName)) {
+                    text = readInlineString();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && isElement("c")) {
+                break;
+            }
+        }
+
+        String value;
+        LocalDateTime date = null;
+        if (text == null) {
+            value = null;
+        } else if ("s".equals(type)) {
+            value = sharedStrings.getEntryAt(Integer.parseInt(text.trim()));
+        } else if ("b".equals(type)) {
+            value = "1".equals(text) ? "TRUE" : "FALSE";
+        } else if (type == null || "n".equals(type)) {
+            value = plainNumber(text);
+            if (style != null && isDateStyle(Integer.parseInt(style))) {
+                date = toLocalDateTime(Double.parseDouble(text));
+            }
+        } else {
+            // str, inlineStr and e cells hold their text as is
+            value = text;
+        }
+
+        while (values.size() <= column) {
+            values.add(null);
+            dates.add(null);
+        }
+        values.set(column, value);
+        dates.set(column, date);
+    }
+
+    /**
+     * Numbers are stored as doubles, so writers may emit <code>10.0</code> or <code>1.0E7</code> for whole numbers.
+     * Such values are rewritten without the exponent or trailing zeros so they bind to Integer and Long fields.
+     */
+    static String plainNumber(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == 'E' || c == 'e') {
+                BigDecimal number = new BigDecimal(text.trim()).stripTrailingZeros();
+                return (number.scale() < 0 ? number.setScale(0) : number).toPlainString();
+            }
+        }
+        return text;
+    }
+
+    private String readInlineString() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "t".equals(reader.getLocalName())) {
+                text.append(reader.getElementText());
+            } else if (event == XMLStreamConstants.END_ELEMENT && "is".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        return text.toString();
+    }
+
+    private boolean isDateStyle(int styleIndex) {
+        Boolean dateStyle = dateStyles.get(styleIndex);
+        if (dateStyle == null) {
+            XSSFCellStyle cellStyle = styles.getStyleAt(styleIndex);
+            dateStyle = cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+            dateStyles.put(styleIndex, dateStyle);
+        }
+        return dateStyle;
+    }
+
+    private LocalDateTime toLocalDateTime(double serial) {
+        if (!DateUtil.isValidExcelDate(serial)) {
+            return null;
+        }
+        Calendar calendar = DateUtil.getJavaCalendar(serial, date1904);
+        return calendar == null ? null : LocalDateTime.ofInstant(calendar.toInstant(), ZoneId.systemDefault());
+    }
+
+    private boolean isElement(String localName) {
+        String namespace = reader.getNamespaceURI();
+        return localName.equals(reader.getLocalName()) && (namespace == null || SPREADSHEET_NS.equals(namespace));
+    }
+
+    /**
+     * Returns the 0 based column of a cell reference such as <code>AB12</code>.
+     */
+    static int columnIndex(String reference) {
+        int column = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            sheetStream.close();
+            opcPackage.revert();
+        }
+    }
+}
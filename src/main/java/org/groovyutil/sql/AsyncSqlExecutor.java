@@ -0,0 +1,223 @@
+package org.groovyutil.sql;
+
+import org.sql2o.Sql2o;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsyncSqlExecutor runs queries on a fixed number of worker threads, each query on a {@link SqlContext} of its own that
+ * borrows a connection from the Sql2o for the length of the query, so the thread count should not exceed the size of
+ * the connection pool.  Queries are returned as CompletableFutures that cancel the running statement with
+ * {@link java.sql.Statement#cancel()} when they are cancelled or time out.
+ */
+final class AsyncSqlExecutor {
+
+    interface SqlTask<T> {
+        T run(SqlContext sqlContext) throws Exception;
+    }
+
+    private static final long CANCEL_RETRY_MILLIS = 100;
+
+    /**
+     * A future that cancels the statement of its query when it is cancelled or completed early.  A cancel that arrives
+     * before the statement starts executing is lost by the driver, so it is repeated until the worker leaves the query.
+     */
+    static final class SqlFuture<T> extends CompletableFuture<T> {
+        private final ScheduledExecutorService timer;
+        private volatile SqlContext sqlContext;
+        private volatile boolean running;
+        private volatile ScheduledFuture<?> timeout;
+
+        SqlFuture(ScheduledExecutorService timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            cancelStatement();
+            return cancelled;
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable throwable) {
+            boolean completed = super.completeExceptionally(throwable);
+            cancelStatement();
+            return completed;
+        }
+
+        void enter(SqlContext sqlContext) {
+            this.sqlContext = sqlContext;
+            running = true;
+        }
+
+        /**
+         * Called by the worker once the task has returned or failed, before the context closes and before the future
+         * completes, so no cancel reaches a closed context and the failure of the task is not retried as a cancel.
+         */
+        void leave() {
+            running = false;
+            sqlContext = null;
+        }
+
+        private void cancelStatement() {
+            SqlContext context = sqlContext;
+            if (!running || context == null) {
+                return;
+            }
+            try {
+                context.cancel();
+            } catch (SQLException e) {
+                // the future already carries the outcome
+            }
+            if (running) {
+                try {
+                    timer.schedule(this::cancelStatement, CANCEL_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // shut down
+                }
+            }
+        }
+    }
+
+    private final Sql2o sql2o;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+
+    AsyncSqlExecutor(Sql2o sql2o, int threads) {
+        this.sql2o = sql2o;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), daemonThreadFactory("sql-async-"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("sql-async-timeout-"));
+    }
+
+    /**
+     * Runs the task on a new context, failing the future with a TimeoutException and cancelling the statement when it
+     * runs longer than <code>timeoutMillis</code>, or never when it is 0.  The timeout starts when the task starts.
+     */
+    <T> CompletableFuture<T> submit(SqlTask<T> task, long timeoutMillis) {
+        SqlFuture<T> future = new SqlFuture<T>(timer);
+        executor.execute(new QueuedTask(future, () -> {
+            if (future.isDone()) {
+                return;
+            }
+            try (SqlContext sqlContext = new SqlContext(sql2o)) {
+                T result;
+                try {
+                    future.enter(sqlContext);
+                    if (future.isDone()) {
+                        return;
+                    }
+                    if (timeoutMillis > 0) {
+                        future.timeout = timer.schedule(() -> future.completeExceptionally(
+                                new TimeoutException("Query timed out after " + timeoutMillis + " ms")),
+                                timeoutMillis, TimeUnit.MILLISECONDS);
+                    }
+                    result = task.run(sqlContext);
+                } finally {
+                    future.leave();
+                }
+                future.complete(result);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                ScheduledFuture<?> timeout = future.timeout;
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Runs the SQL files with at most <code>concurrency</code> running at once.  The future completes when every file
+     * has run, or fails with the first failure, after which no further files are started.
+     */
+    CompletableFuture<Void> executeSqlFiles(List<String> sqlFilenames, int concurrency, long timeoutMillis) {
+        CompletableFuture<Void> all = new CompletableFuture<Void>();
+        if (sqlFilenames.isEmpty()) {
+            all.complete(null);
+            return all;
+        }
+
+        Iterator<String> pending = sqlFilenames.iterator();
+        AtomicInteger remaining = new AtomicInteger(sqlFilenames.size());
+        for (int worker = 0; worker < Math.max(1, Math.min(concurrency, sqlFilenames.size())); worker++) {
+            runNextFile(pending, remaining, all, timeoutMillis);
+        }
+        return all;
+    }
+
+    private void runNextFile(Iterator<String> pending, AtomicInteger remaining, CompletableFuture<Void> all,
+                             long timeoutMillis) {
+        String sqlFilename;
+        synchronized (pending) {
+            if (all.isDone() || !pending.hasNext()) {
+                return;
+            }
+            sqlFilename = pending.next();
+        }
+
+        submit(sqlContext -> {
+            sqlContext.executeSqlFile(sqlFilename);
+            return null;
+        }, timeoutMillis).whenComplete((result, e) -> {
+            if (e != null) {
+                all.completeExceptionally(e);
+            } else if (remaining.decrementAndGet() == 0) {
+                all.complete(null);
+            } else {
+                runNextFile(pending, remaining, all, timeoutMillis);
+            }
+        });
+    }
+
+    /**
+     * Stops the worker threads and cancels the futures of queued queries.
+     */
+    void shutdown() {
+        for (Runnable runnable : executor.shutdownNow()) {
+            ((QueuedTask) runnable).future.cancel(false);
+        }
+        timer.shutdownNow();
+    }
+
+    private static final class QueuedTask implements Runnable {
+        final CompletableFuture<?> future;
+        final Runnable body;
+
+        QueuedTask(CompletableFuture<?> future, Runnable body) {
+            this.future = future;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
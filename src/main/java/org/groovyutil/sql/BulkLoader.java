@@ -0,0 +1,231 @@
+package org.groovyutil.sql;
+
+import org.groovyutil.record.DataField;
+import org.groovyutil.record.RecordFactory.BeanField;
+import org.groovyutil.record.RecordSchema;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * BulkLoader inserts {@link DataField} annotated beans into a table with JDBC batches.  The columns are the
+ * {@link DataField#name()} of every field marked for output, in id order, and values are read through the compiled
+ * field binders of the bean's {@link RecordSchema}.
+ * <p>
+ * When <code>rowsPerInsert</code> is greater than one, rows are grouped into multi-row
+ * <code>INSERT ... VALUES (...), (...)</code> statements, which some drivers execute far faster than a batch of
+ * single row statements.  Rows left over at the end are sent with the single row statement.
+ */
+final class BulkLoader<T> {
+
+    private final String table;
+    private final BeanField[] columns;
+    private final int[] sqlTypes;
+
+    BulkLoader(String table, Class<T> beanClass) {
+        this.table = table;
+
+        ArrayList<BeanField> outputFields = new ArrayList<BeanField>();
+        for (BeanField beanField : RecordSchema.of(beanClass).getDataFields()) {
+            if (beanField.dataField.output() && !beanField.dataField.name().isEmpty()) {
+                outputFields.add(beanField);
+            }
+        }
+        if (outputFields.isEmpty()) {
+            throw new IllegalArgumentException("Class " + beanClass.getName() + " has no named DataField to load");
+        }
+
+        this.columns = outputFields.toArray(new BeanField[outputFields.size()]);
+        this.sqlTypes = new int[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            sqlTypes[column] = sqlTypeOf(columns[column].binder.getType());
+        }
+    }
+
+    String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int column = 0; column < columns.length; column++) {
+            if (column > 0) sql.append(", ");
+            sql.append(columns[column].dataField.name());
+        }
+        sql.append(") VALUES ");
+
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) sql.append(", ");
+            sql.append('(');
+            for (int column = 0; column < columns.length; column++) {
+                if (column > 0) sql.append(", ");
+                sql.append('?');
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Inserts the beans, executing a batch every <code>batchSize</code> rows and committing once at least
+     * <code>commitInterval</code> rows have been sent since the last commit, or only at the end when
+     * <code>commitInterval</code> is 0.  On failure the uncommitted rows are rolled back.
+     *
+     * @return the number of rows inserted
+     */
+    long load(Connection jdbcConnection, Iterator<? extends T> beans, int batchSize, int commitInterval,
+              int rowsPerInsert) throws Exception {
+        boolean autoCommit = jdbcConnection.getAutoCommit();
+        int multiRows = Math.max(1, rowsPerInsert);
+        int statementsPerBatch = Math.max(1, batchSize / multiRows);
+
+        PreparedStatement singleRowStatement = null;
+        PreparedStatement multiRowStatement = null;
+        try {
+            jdbcConnection.setAutoCommit(false);
+            singleRowStatement = jdbcConnection.prepareStatement(insertSql(1));
+            if (multiRows > 1) {
+                multiRowStatement = jdbcConnection.prepareStatement(insertSql(multiRows));
+            }
+            int[] nullTypes = nullTypes(singleRowStatement);
+
+            Object[] group = new Object[multiRows];
+            int groupSize = 0;
+            int batchedStatements = 0;
+            long rowCnt = 0;
+            long uncommittedRows = 0;
+
+            while (beans.hasNext()) {
+                group[groupSize++] = beans.next();
+                if (groupSize < multiRows) {
+                    continue;
+                }
+
+                PreparedStatement statement = multiRows > 1 ? multiRowStatement : singleRowStatement;
+                for (int row = 0; row < groupSize; row++) {
+                    bindRow(statement, row * columns.length, group[row], nullTypes);
+                }
+                statement.addBatch();
+                rowCnt += groupSize;
+                uncommittedRows += groupSize;
+                groupSize = 0;
+
+                if (++batchedStatements >= statementsPerBatch) {
+                    statement.executeBatch();
+                    batchedStatements = 0;
+
+                    if (commitInterval > 0 && uncommittedRows >= commitInterval) {
+                        jdbcConnection.commit();
+                        uncommittedRows = 0;
+                    }
+                }
+            }
+
+            if (batchedStatements > 0) {
+                (multiRows > 1 ? multiRowStatement : singleRowStatement).executeBatch();
+            }
+            for (int row = 0; row < groupSize; row++) {
+                bindRow(singleRowStatement, 0, group[row], nullTypes);
+                singleRowStatement.addBatch();
+                rowCnt++;
+            }
+            if (groupSize > 0) {
+                singleRowStatement.executeBatch();
+            }
+
+            jdbcConnection.commit();
+            return rowCnt;
+        } catch (Exception e) {
+            try {
+                jdbcConnection.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            try {
+                closeQuietly(singleRowStatement);
+                closeQuietly(multiRowStatement);
+            } finally {
+                jdbcConnection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private void bindRow(PreparedStatement statement, int parameterOffset, Object bean, int[] nullTypes)
+            throws Exception {
+        for (int column = 0; column < columns.length; column++) {
+            int parameterIndex = parameterOffset + column + 1;
+            Object value = columns[column].binder.get(bean);
+
+            if (value == null) {
+                statement.setNull(parameterIndex, nullTypes[column]);
+            } else if (value instanceof LocalDate) {
+                statement.setDate(parameterIndex, java.sql.Date.valueOf((LocalDate) value));
+            } else if (value instanceof LocalDateTime) {
+                statement.setTimestamp(parameterIndex, Timestamp.valueOf((LocalDateTime) value));
+            } else {
+                statement.setObject(parameterIndex, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the types nulls are bound as: the type of the field where it maps to one, or else the type the driver
+     * reports for the parameter, or else OTHER when the driver does not report parameter types.
+     */
+    private int[] nullTypes(PreparedStatement statement) {
+        int[] nullTypes = sqlTypes.clone();
+        ParameterMetaData metaData = null;
+        for (int column = 0; column < nullTypes.length; column++) {
+            if (nullTypes[column] != Types.OTHER) {
+                continue;
+            }
+            try {
+                if (metaData == null) {
+                    metaData = statement.getParameterMetaData();
+                }
+                nullTypes[column] = metaData.getParameterType(column + 1);
+            } catch (SQLException e) {
+                // the driver does not describe parameters, so bind nulls as OTHER
+            }
+        }
+        return nullTypes;
+    }
+
+    private static int sqlTypeOf(Class<?> type) {
+        if (type == String.class) return Types.VARCHAR;
+        if (type == Character.class || type == char.class) return Types.CHAR;
+        if (type == Boolean.class || type == boolean.class) return Types.BOOLEAN;
+        if (type == Byte.class || type == byte.class) return Types.TINYINT;
+        if (type == Short.class || type == short.class) return Types.SMALLINT;
+        if (type == Integer.class || type == int.class) return Types.INTEGER;
+        if (type == Long.class || type == long.class) return Types.BIGINT;
+        if (type == Float.class || type == float.class) return Types.REAL;
+        if (type == Double.class || type == double.class) return Types.DOUBLE;
+        if (type == BigInteger.class) return Types.NUMERIC;
+        if (type == BigDecimal.class) return Types.DECIMAL;
+        if (type == LocalDate.class || type == java.sql.Date.class) return Types.DATE;
+        if (type == LocalTime.class || type == java.sql.Time.class) return Types.TIME;
+        if (type == LocalDateTime.class || type == Timestamp.class || type == java.util.Date.class) return Types.TIMESTAMP;
+        if (type == byte[].class) return Types.VARBINARY;
+        return Types.OTHER;
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // the load result is already decided
+            }
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package org.groovyutil.sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * ColumnarResult holds a query result column by column in primitive arrays instead of a list of boxed rows.  Integral
+ * columns are held as <code>long[]</code>, floating point and decimal columns as <code>double[]</code>, character
+ * columns as dictionary codes into a table of distinct strings, and every other column as objects.  Nulls are kept in a
+ * bitmap per column, allocated on the first null, and read as 0 from the primitive getters.
+ * <p>
+ * Decimal columns with a scale are read as doubles; use {@link SqlUtility#GenericSqlQuery} where exact values matter.
+ * <pre>
+ * ColumnarResult result = SqlUtility.GenericSqlQueryColumnar("select account, amount from trade");
+ * ColumnarResult.DoubleColumn amount = result.getDoubleColumn("amount");
+ * double total = 0;
+ * for (int row = 0; row &lt; result.getRowCount(); row++) {
+ *     total += amount.get(row);
+ * }
+ * </pre>
+ */
+public class ColumnarResult {
+
+    public enum ColumnType { LONG, DOUBLE, STRING, OBJECT }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * A column of the result.
+     */
+    public abstract static class Column {
+        private final String name;
+        private final ColumnType type;
+        long[] nulls;
+
+        Column(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+
+        public boolean isNull(int row) {
+            return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+
+        public abstract Object getObject(int row);
+
+        abstract void read(ResultSet resultSet, int index, int row) throws SQLException;
+
+        abstract void resize(int capacity);
+
+        final void setNull(int row, int capacity) {
+            if (nulls == null) {
+                nulls = new long[(capacity + 63) >>> 6];
+            }
+            nulls[row >>> 6] |= 1L << row;
+        }
+
+        void resizeNulls(int capacity) {
+            if (nulls != null) {
+                nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+            }
+        }
+    }
+
+    public static final class LongColumn extends Column {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        LongColumn(String name) {
+            super(name, ColumnType.LONG);
+        }
+
+        public long get(int row) {
+            return values[row];
+        }
+
+        /**
+         * Returns the values of the column, one per row, with 0 for nulls.
+         */
+        public long[] getValues() {
+            return values;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            values[row] = resultSet.getLong(index);
+            if (values[row] == 0 && resultSet.wasNull()) {
+                setNull(row, values.length);
+            }
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+            resizeNulls(capacity);
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        DoubleColumn(String name) {
+            super(name, ColumnType.DOUBLE);
+        }
+
+        public double get(int row) {
+            return values[row];
+        }
+
+        /**
+         * Returns the values of the column, one per row, with 0 for nulls.
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            values[row] = resultSet.getDouble(index);
+            if (values[row] == 0 && resultSet.wasNull()) {
+                setNull(row, values.length);
+            }
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+            resizeNulls(capacity);
+        }
+    }
+
+    /**
+     * A character column held as an int code per row into a dictionary of its distinct values, so repeated values such
+     * as account or currency codes are stored once.  Nulls have the code -1.
+     */
+    public static final class StringColumn extends Column {
+        private int[] codes = new int[INITIAL_CAPACITY];
+        private String[] dictionary = new String[16];
+        private int dictionarySize;
+        private HashMap<String, Integer> dictionaryCodes = new HashMap<>();
+
+        StringColumn(String name) {
+            super(name, ColumnType.STRING);
+        }
+
+        public String get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+
+        public int getCode(int row) {
+            return codes[row];
+        }
+
+        /**
+         * Returns the distinct values of the column, indexed by code.
+         */
+        public String[] getDictionary() {
+            return dictionary;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return get(row);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            String value = resultSet.getString(index);
+            if (value == null) {
+                codes[row] = -1;
+                setNull(row, codes.length);
+                return;
+            }
+            Integer code = dictionaryCodes.get(value);
+            if (code == null) {
+                if (dictionarySize == dictionary.length) {
+                    dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+                }
+                code = dictionarySize;
+                dictionary[dictionarySize++] = value;
+                dictionaryCodes.put(value, code);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        void resize(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+            resizeNulls(capacity);
+        }
+
+        void trimDictionary() {
+            dictionary = Arrays.copyOf(dictionary, dictionarySize);
+            dictionaryCodes = null;
+        }
+    }
+
+    public static final class ObjectColumn extends Column {
+        private Object[] values = new Object[INITIAL_CAPACITY];
+
+        ObjectColumn(String name) {
+            super(name, ColumnType.OBJECT);
+        }
+
+        public Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            values[row] = resultSet.getObject(index);
+            if (values[row] == null) {
+                setNull(row, values.length);
+            }
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+            resizeNulls(capacity);
+        }
+    }
+
+    /**
+     * A forward cursor over the rows of the result.  The getters read the current row without allocating.
+     */
+    public final class RowCursor {
+        private int row = -1;
+
+        public boolean next() {
+            if (row + 1 < rowCount) {
+                row++;
+                return true;
+            }
+            return false;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public boolean isNull(int column) {
+            return columns[column].isNull(row);
+        }
+
+        public boolean isNull(String column) {
+            return isNull(getColumnIndex(column));
+        }
+
+        public long getLong(int column) {
+            return ColumnarResult.this.getLong(row, column);
+        }
+
+        public long getLong(String column) {
+            return getLong(getColumnIndex(column));
+        }
+
+        public double getDouble(int column) {
+            return ColumnarResult.this.getDouble(row, column);
+        }
+
+        public double getDouble(String column) {
+            return getDouble(getColumnIndex(column));
+        }
+
+        public String getString(int column) {
+            return ColumnarResult.this.getString(row, column);
+        }
+
+        public String getString(String column) {
+            return getString(getColumnIndex(column));
+        }
+
+        public Object getObject(int column) {
+            return columns[column].getObject(row);
+        }
+
+        public Object getObject(String column) {
+            return getObject(getColumnIndex(column));
+        }
+    }
+
+    private final Column[] columns;
+    private final int rowCount;
+
+    private ColumnarResult(Column[] columns, int rowCount) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Reads the remaining rows of the result set into columns typed from its metadata.
+     */
+    static ColumnarResult read(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        Column[] columns = new Column[metaData.getColumnCount()];
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = createColumn(metaData, column + 1);
+        }
+
+        int capacity = INITIAL_CAPACITY;
+        int rowCount = 0;
+        while (resultSet.next()) {
+            if (rowCount == capacity) {
+                capacity *= 2;
+                for (Column column : columns) {
+                    column.resize(capacity);
+                }
+            }
+            for (int column = 0; column < columns.length; column++) {
+                columns[column].read(resultSet, column + 1, rowCount);
+            }
+            rowCount++;
+        }
+
+        for (Column column : columns) {
+            column.resize(rowCount);
+            if (column instanceof StringColumn) {
+                ((StringColumn) column).trimDictionary();
+            }
+        }
+        return new ColumnarResult(columns, rowCount);
+    }
+
+    private static Column createColumn(ResultSetMetaData metaData, int index) throws SQLException {
+        String name = metaData.getColumnLabel(index);
+        switch (metaData.getColumnType(index)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return new LongColumn(name);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                int precision = metaData.getPrecision(index);
+                if (metaData.getScale(index) == 0 && precision > 0 && precision <= 18) {
+                    return new LongColumn(name);
+                }
+                return new DoubleColumn(name);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleColumn(name);
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn(name);
+            default:
+                return new ObjectColumn(name);
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public Column getColumn(int column) {
+        return columns[column];
+    }
+
+    public Column getColumn(String column) {
+        return columns[getColumnIndex(column)];
+    }
+
+    /**
+     * Returns the index of the column with the label, ignoring case.
+     */
+    public int getColumnIndex(String column) {
+        for (int index = 0; index < columns.length; index++) {
+            if (columns[index].getName().equalsIgnoreCase(column)) {
+                return index;
+            }
+        }
+        throw new IllegalArgumentException("No column " + column + " in result");
+    }
+
+    public LongColumn getLongColumn(String column) {
+        return (LongColumn) getColumn(column);
+    }
+
+    public DoubleColumn getDoubleColumn(String column) {
+        return (DoubleColumn) getColumn(column);
+    }
+
+    public StringColumn getStringColumn(String column) {
+        return (StringColumn) getColumn(column);
+    }
+
+    public boolean isNull(int row, int column) {
+        return columns[column].isNull(row);
+    }
+
+    /**
+     * Returns the value of a LONG or DOUBLE column as a long, truncating doubles.
+     */
+    public long getLong(int row, int column) {
+        Column typedColumn = columns[column];
+        if (typedColumn instanceof LongColumn) {
+            return ((LongColumn) typedColumn).get(row);
+        }
+        if (typedColumn instanceof DoubleColumn) {
+            return (long) ((DoubleColumn) typedColumn).get(row);
+        }
+        throw new IllegalStateException("Column " + typedColumn.getName() + " is " + typedColumn.getType());
+    }
+
+    /**
+     * Returns the value of a LONG or DOUBLE column as a double.
+     */
+    public double getDouble(int row, int column) {
+        Column typedColumn = columns[column];
+        if (typedColumn instanceof DoubleColumn) {
+            return ((DoubleColumn) typedColumn).get(row);
+        }
+        if (typedColumn instanceof LongColumn) {
+            return ((LongColumn) typedColumn).get(row);
+        }
+        throw new IllegalStateException("Column " + typedColumn.getName() + " is " + typedColumn.getType());
+    }
+
+    public String getString(int row, int column) {
+        Column typedColumn = columns[column];
+        if (typedColumn instanceof StringColumn) {
+            return ((StringColumn) typedColumn).get(row);
+        }
+        Object value = typedColumn.getObject(row);
+        return value == null ? null : value.toString();
+    }
+
+    public Object getObject(int row, int column) {
+        return columns[column].getObject(row);
+    }
+
+    public RowCursor cursor() {
+        return new RowCursor();
+    }
+}
@@ -0,0 +1,71 @@
+package org.groovyutil.sql;
+
+/**
+ * The outcome of one key range of a partitioned export: the range exported, the part file written and how quickly.
+ * A null bound means the range is open on that side.  The first partition also holds the rows whose split column is
+ * null.
+ */
+public class ExportPartition {
+
+    private final int partition;
+    private final Object lowerBound;
+    private final Object upperBound;
+    private final String filename;
+    private long rowCount;
+    private long elapsedMillis;
+
+    ExportPartition(int partition, Object lowerBound, Object upperBound, String filename) {
+        this.partition = partition;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.filename = filename;
+    }
+
+    void complete(long rowCount, long elapsedMillis) {
+        this.rowCount = rowCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * Returns the inclusive lower bound of the range, or null for the first partition.
+     */
+    public Object getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the range, or null for the last partition.
+     */
+    public Object getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Returns the part file the range was written to.  Part files are removed once merged.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? rowCount : rowCount * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "partition " + partition + " [" + lowerBound + ", " + upperBound + ") rows = " + rowCount
+                + " elapsed = " + elapsedMillis + " ms rows/sec = " + Math.round(getRowsPerSecond());
+    }
+}
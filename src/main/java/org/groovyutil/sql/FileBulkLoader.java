@@ -0,0 +1,326 @@
+package org.groovyutil.sql;
+
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * FileBulkLoader loads a delimited file into a table through the native bulk load of the database where there is one,
+ * and through JDBC batches of inserts otherwise.  The file is read as a stream, never held in memory.
+ * <ul>
+ * <li>PostgreSQL: <code>COPY ... FROM STDIN</code> through the CopyManager of the driver, found by reflection so the
+ * driver is not a compile dependency;</li>
+ * <li>MySQL and MariaDB: <code>LOAD DATA LOCAL INFILE</code>, which needs <code>allowLoadLocalInfile=true</code> on the
+ * connection, reads the file in the charset of the database and loads empty fields as empty strings rather than
+ * nulls;</li>
+ * <li>H2: <code>INSERT ... SELECT * FROM CSVREAD(...)</code>.</li>
+ * </ul>
+ * When the file has a header its names are the columns loaded, matched to the columns of the table without regard to
+ * case and rejected when the table has no such column, otherwise the file must hold every column of the table in table
+ * order.  The file is read in the default charset, the charset the exports write.
+ */
+final class FileBulkLoader {
+
+    public static Logger logger = LoggerFactory.getLogger(FileBulkLoader.class);
+
+    private final String table;
+    private final char delimiter;
+    private final boolean header;
+
+    FileBulkLoader(String table, char delimiter, boolean header) {
+        this.table = table;
+        this.delimiter = delimiter;
+        this.header = header;
+    }
+
+    /**
+     * Loads the file in one transaction when <code>nativeLoad</code> is set and the database has a native load, or
+     * else in batches of <code>batchSize</code> rows committed every <code>commitInterval</code> rows, or only at the
+     * end when it is 0.  On failure the uncommitted rows are rolled back.
+     *
+     * @return the number of rows loaded
+     */
+    long load(Connection jdbcConnection, String filename, boolean nativeLoad, int batchSize, int commitInterval) throws Exception {
+        String[] columns = header ? matchColumns(jdbcConnection, readHeader(filename)) : null;
+        String product = jdbcConnection.getMetaData().getDatabaseProductName();
+
+        boolean autoCommit = jdbcConnection.getAutoCommit();
+        long startTime = System.currentTimeMillis();
+        try {
+            jdbcConnection.setAutoCommit(false);
+
+            long rowCnt;
+            String method;
+            if (nativeLoad && product.startsWith("PostgreSQL")) {
+                method = "COPY";
+                rowCnt = copyIn(jdbcConnection, filename, columns);
+            } else if (nativeLoad && (product.startsWith("MySQL") || product.startsWith("MariaDB"))) {
+                method = "LOAD DATA";
+                rowCnt = loadDataLocalInfile(jdbcConnection, filename, columns);
+            } else if (nativeLoad && product.startsWith("H2") && !Character.isWhitespace(delimiter)) {
+                method = "CSVREAD";
+                rowCnt = csvRead(jdbcConnection, filename, columns);
+            } else {
+                method = "batched inserts";
+                rowCnt = insertBatches(jdbcConnection, filename, columns, batchSize, commitInterval);
+            }
+
+            jdbcConnection.commit();
+            logger.info("Bulk Load Time = {} records = {} table = {} method = {}", System.currentTimeMillis() - startTime,
+                    rowCnt, table, method);
+            return rowCnt;
+        } catch (Exception e) {
+            try {
+                jdbcConnection.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            jdbcConnection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private long copyIn(Connection jdbcConnection, String filename, String[] columns) throws Exception {
+        StringBuilder sql = new StringBuilder("COPY ").append(table).append(columnList(columns))
+                .append(" FROM STDIN WITH (FORMAT csv, DELIMITER ").append(standardLiteral(String.valueOf(delimiter)))
+                .append(", HEADER ").append(header).append(')');
+
+        Class<?> pgConnectionClass = Class.forName("org.postgresql.PGConnection");
+        Object pgConnection = jdbcConnection.unwrap(pgConnectionClass);
+        try (Reader reader = createReader(filename)) {
+            Object copyManager = pgConnectionClass.getMethod("getCopyAPI").invoke(pgConnection);
+            return (Long) copyManager.getClass().getMethod("copyIn", String.class, Reader.class)
+                    .invoke(copyManager, sql.toString(), reader);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private long loadDataLocalInfile(Connection jdbcConnection, String filename, String[] columns) throws SQLException {
+        String sql = "LOAD DATA LOCAL INFILE " + literal(new File(filename).getAbsolutePath())
+                + " INTO TABLE " + table
+                + " FIELDS TERMINATED BY " + literal(String.valueOf(delimiter))
+                + " OPTIONALLY ENCLOSED BY '\"' ESCAPED BY ''"
+                + " LINES TERMINATED BY " + literal(System.lineSeparator())
+                + (header ? " IGNORE 1 LINES" : "")
+                + columnList(columns);
+        try (Statement statement = jdbcConnection.createStatement()) {
+            return statement.executeUpdate(sql);
+        }
+    }
+
+    private long csvRead(Connection jdbcConnection, String filename, String[] columns) throws SQLException {
+        String[] fileColumns = columns != null ? columns : tableColumns(jdbcConnection);
+        String sql = "INSERT INTO " + table + columnList(fileColumns) + " SELECT * FROM CSVREAD("
+                + standardLiteral(new File(filename).getAbsolutePath()) + ", "
+                + (header ? "NULL" : standardLiteral(String.join(String.valueOf(delimiter), fileColumns))) + ", "
+                + standardLiteral("charset=" + Charset.defaultCharset().name() + " fieldSeparator=" + delimiter) + ")";
+        try (Statement statement = jdbcConnection.createStatement()) {
+            return statement.executeUpdate(sql);
+        }
+    }
+
+    private long insertBatches(Connection jdbcConnection, String filename, String[] columns, int batchSize,
+                               int commitInterval) throws Exception {
+        String[] insertColumns = columns != null ? columns : tableColumns(jdbcConnection);
+        int[] sqlTypes = columnTypes(jdbcConnection, insertColumns);
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(columnList(insertColumns))
+                .append(" VALUES (");
+        for (int column = 0; column < insertColumns.length; column++) {
+            sql.append(column == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+
+        CsvParser parser = new CsvParser(createParserSettings());
+        try (PreparedStatement statement = jdbcConnection.prepareStatement(sql.toString())) {
+            parser.beginParsing(createReader(filename));
+            if (header) {
+                parser.parseNext();
+            }
+
+            long rowCnt = 0;
+            long uncommittedRows = 0;
+            int batchedRows = 0;
+            String[] values;
+            while ((values = parser.parseNext()) != null) {
+                for (int column = 0; column < sqlTypes.length; column++) {
+                    bindValue(statement, column + 1, sqlTypes[column], column < values.length ? values[column] : null);
+                }
+                statement.addBatch();
+                rowCnt++;
+                uncommittedRows++;
+
+                if (++batchedRows >= batchSize) {
+                    statement.executeBatch();
+                    batchedRows = 0;
+
+                    if (commitInterval > 0 && uncommittedRows >= commitInterval) {
+                        jdbcConnection.commit();
+                        uncommittedRows = 0;
+                    }
+                }
+            }
+            if (batchedRows > 0) {
+                statement.executeBatch();
+            }
+            return rowCnt;
+        } finally {
+            parser.stopParsing();
+        }
+    }
+
+    /**
+     * Binds a field of the file converted to the type of its column, so loading does not rely on the driver converting
+     * strings.
+     */
+    private static void bindValue(PreparedStatement statement, int parameterIndex, int sqlType, String value)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(parameterIndex, sqlType);
+            return;
+        }
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                statement.setInt(parameterIndex, Integer.parseInt(value.trim()));
+                break;
+            case Types.BIGINT:
+                statement.setLong(parameterIndex, Long.parseLong(value.trim()));
+                break;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                statement.setBigDecimal(parameterIndex, new BigDecimal(value.trim()));
+                break;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                statement.setDouble(parameterIndex, Double.parseDouble(value.trim()));
+                break;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                statement.setBoolean(parameterIndex, Boolean.parseBoolean(value.trim()));
+                break;
+            case Types.DATE:
+                statement.setDate(parameterIndex, java.sql.Date.valueOf(value.trim()));
+                break;
+            case Types.TIMESTAMP:
+                statement.setTimestamp(parameterIndex, Timestamp.valueOf(value.trim()));
+                break;
+            default:
+                statement.setString(parameterIndex, value);
+        }
+    }
+
+    private String[] readHeader(String filename) throws Exception {
+        CsvParser parser = new CsvParser(createParserSettings());
+        try {
+            parser.beginParsing(createReader(filename));
+            String[] names = parser.parseNext();
+            if (names == null) {
+                throw new IllegalArgumentException("File " + filename + " has no header");
+            }
+            for (int column = 0; column < names.length; column++) {
+                names[column] = names[column].trim();
+            }
+            return names;
+        } finally {
+            parser.stopParsing();
+        }
+    }
+
+    /**
+     * Maps the names of the header to the columns of the table, so that the SQL only holds names as the table spells
+     * them and never text taken from the file.
+     */
+    private String[] matchColumns(Connection jdbcConnection, String[] names) throws SQLException {
+        String[] tableColumns = tableColumns(jdbcConnection);
+        String[] columns = new String[names.length];
+        for (int column = 0; column < names.length; column++) {
+            for (String tableColumn : tableColumns) {
+                if (tableColumn.equalsIgnoreCase(names[column])) {
+                    columns[column] = tableColumn;
+                    break;
+                }
+            }
+            if (columns[column] == null) {
+                throw new IllegalArgumentException("Table " + table + " has no column " + names[column]);
+            }
+        }
+        return columns;
+    }
+
+    private String[] tableColumns(Connection jdbcConnection) throws SQLException {
+        try (Statement statement = jdbcConnection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            String[] columns = new String[metaData.getColumnCount()];
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = metaData.getColumnName(column + 1);
+            }
+            return columns;
+        }
+    }
+
+    private int[] columnTypes(Connection jdbcConnection, String[] columns) throws SQLException {
+        try (Statement statement = jdbcConnection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT " + String.join(", ", columns) + " FROM " + table
+                     + " WHERE 1 = 0")) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int[] sqlTypes = new int[columns.length];
+            for (int column = 0; column < sqlTypes.length; column++) {
+                sqlTypes[column] = metaData.getColumnType(column + 1);
+            }
+            return sqlTypes;
+        }
+    }
+
+    private CsvParserSettings createParserSettings() {
+        CsvParserSettings parserSettings = new CsvParserSettings();
+        parserSettings.getFormat().setDelimiter(delimiter);
+        parserSettings.setLineSeparatorDetectionEnabled(true);
+        return parserSettings;
+    }
+
+    private static Reader createReader(String filename) throws Exception {
+        return new InputStreamReader(new FileInputStream(filename), Charset.defaultCharset());
+    }
+
+    private static String columnList(String[] columns) {
+        return columns == null ? "" : " (" + String.join(", ", columns) + ")";
+    }
+
+    /**
+     * Quotes a standard SQL string literal, in which only quotes are escaped.
+     */
+    private static String standardLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    /**
+     * Quotes a MySQL string literal.
+     */
+    private static String literal(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "''").replace("\n", "\\n").replace("\r", "\\r")
+                .replace("\t", "\\t") + "'";
+    }
+}
@@ -0,0 +1,260 @@
+package org.groovyutil.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * IncrementalExporter exports the rows of a query above a high water mark on an increasing column, an id or an update
+ * timestamp, and keeps the high water mark of the last successful run in a checkpoint properties file.  The query is
+ * wrapped as <code>SELECT * FROM (query) WHERE watermark column &gt; mark ORDER BY watermark column</code>, so it must be
+ * usable as a derived table.  Rows with a null watermark are never exported.
+ * <p>
+ * The checkpoint is replaced with an atomic rename only after the rows have been forced to disk, and it records the
+ * output file with its length, so a run that fails part way is recovered on the next run:
+ * <ul>
+ * <li>when appending, rows written after the checkpoint are truncated away and exported again;</li>
+ * <li>otherwise rows are written to a temporary file named after the run, which the checkpoint records before it is
+ * renamed over <code>filename</code>; a rename the failed run did not get to is completed, and the temporary files of
+ * runs that failed before their checkpoint are deleted.</li>
+ * </ul>
+ * Rows committed with a watermark below one already exported, such as ids handed out by a sequence in one transaction
+ * and committed after a later one, are not picked up.
+ */
+final class IncrementalExporter {
+
+    public static Logger logger = LoggerFactory.getLogger(IncrementalExporter.class);
+
+    private static final String COLUMN = "column";
+    private static final String WATERMARK = "watermark";
+    private static final String WATERMARK_TYPE = "watermarkType";
+    private static final String FILE = "file";
+    private static final String FILE_LENGTH = "fileLength";
+    private static final String TEMP_FILE = "tempFile";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final SqlContext sqlContext;
+    private final String sqlString;
+    private final String watermarkColumn;
+    private final String sourceColumn;
+    private final Object[] params;
+
+    IncrementalExporter(SqlContext sqlContext, String sqlString, String watermarkColumn, Object... params) {
+        this.sqlContext = sqlContext;
+        this.sqlString = stripTrailingSemicolon(sqlString);
+        this.watermarkColumn = watermarkColumn;
+        // the outer query reads the derived table, where a qualifier such as t.col no longer resolves
+        this.sourceColumn = watermarkColumn.substring(watermarkColumn.lastIndexOf('.') + 1);
+        this.params = params;
+    }
+
+    long export(String filename, String checkpointFilename, boolean append) throws Exception {
+        Path outputPath = Paths.get(filename).toAbsolutePath();
+        Path checkpointPath = Paths.get(checkpointFilename);
+        Properties checkpoint = readCheckpoint(checkpointPath);
+        if (checkpoint.getProperty(COLUMN) != null && !checkpoint.getProperty(COLUMN).equalsIgnoreCase(watermarkColumn)) {
+            throw new IllegalStateException("Checkpoint " + checkpointFilename + " is for column " + checkpoint.getProperty(COLUMN));
+        }
+        recover(checkpoint, outputPath, append);
+
+        Object watermark = parseWatermark(checkpoint.getProperty(WATERMARK_TYPE), checkpoint.getProperty(WATERMARK));
+        ArrayList<Object> exportParams = new ArrayList<Object>(Arrays.asList(params));
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(sqlString).append(") incremental_source WHERE ")
+                .append(sourceColumn);
+        if (watermark == null) {
+            sql.append(" IS NOT NULL");
+        } else {
+            exportParams.add(watermark);
+            sql.append(" > :p").append(exportParams.size());
+        }
+        sql.append(" ORDER BY ").append(sourceColumn);
+
+        if (append && !outputPath.toString().equals(checkpoint.getProperty(FILE))) {
+            checkpoint.setProperty(FILE, outputPath.toString());
+            checkpoint.setProperty(FILE_LENGTH, Long.toString(Files.exists(outputPath) ? Files.size(outputPath) : 0));
+            checkpoint.remove(TEMP_FILE);
+            writeCheckpoint(checkpointPath, checkpoint);
+        }
+
+        long startTime = System.currentTimeMillis();
+        Path writePath = append ? outputPath : Paths.get(outputPath + "." + startTime + TEMP_SUFFIX);
+        boolean writeHeader = sqlContext.header && !(append && Files.exists(outputPath) && Files.size(outputPath) > 0);
+        long rowCnt;
+        Object lastWatermark;
+
+        try (SqlCursor cursor = sqlContext.openSqlCursor(sql.toString(), exportParams.toArray())) {
+            int watermarkIndex = findColumn(cursor.getColumnLabels());
+            Object[] row = new Object[cursor.getColumnLabels().length];
+
+            FileOutputStream outputStream = new FileOutputStream(writePath.toFile(), append);
+            try (Writer writer = SqlContext.createFileWriter(outputStream)) {
+                rowCnt = sqlContext.writeResultSet(cursor, writer, writeHeader, row);
+                outputStream.getFD().sync();
+            }
+            lastWatermark = rowCnt == 0 ? null : row[watermarkIndex];
+        }
+
+        if (lastWatermark != null || !append) {
+            checkpoint.setProperty(COLUMN, watermarkColumn);
+            if (lastWatermark != null) {
+                checkpoint.setProperty(WATERMARK_TYPE, watermarkType(lastWatermark));
+                checkpoint.setProperty(WATERMARK, formatWatermark(lastWatermark));
+            }
+            checkpoint.setProperty(FILE, outputPath.toString());
+            checkpoint.setProperty(FILE_LENGTH, Long.toString(Files.size(writePath)));
+            if (append) {
+                checkpoint.remove(TEMP_FILE);
+            } else {
+                checkpoint.setProperty(TEMP_FILE, writePath.toString());
+            }
+            writeCheckpoint(checkpointPath, checkpoint);
+        }
+        if (!append) {
+            Files.move(writePath, outputPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            checkpoint.remove(TEMP_FILE);
+            writeCheckpoint(checkpointPath, checkpoint);
+        }
+
+        logger.info("Incremental Export Time = {} records = {} {} = {}", System.currentTimeMillis() - startTime, rowCnt,
+                watermarkColumn, checkpoint.getProperty(WATERMARK));
+        return rowCnt;
+    }
+
+    /**
+     * Brings the output file back in line with the checkpoint after a failed run.
+     */
+    private static void recover(Properties checkpoint, Path outputPath, boolean append) throws Exception {
+        String tempFile = checkpoint.getProperty(TEMP_FILE);
+        if (tempFile != null) {
+            if (Files.exists(Paths.get(tempFile))) {
+                logger.info("Completing export of {} interrupted after checkpoint", checkpoint.getProperty(FILE));
+                Files.move(Paths.get(tempFile), Paths.get(checkpoint.getProperty(FILE)), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            checkpoint.remove(TEMP_FILE);
+        }
+        // matched by prefix rather than a glob, so that characters such as [ or { in the file name are taken literally
+        String tempPrefix = outputPath.getFileName() + ".";
+        try (DirectoryStream<Path> staleFiles = Files.newDirectoryStream(outputPath.getParent(),
+                path -> path.getFileName().toString().startsWith(tempPrefix)
+                        && path.getFileName().toString().endsWith(TEMP_SUFFIX))) {
+            for (Path staleFile : staleFiles) {
+                Files.delete(staleFile);
+            }
+        }
+
+        String file = checkpoint.getProperty(FILE);
+        if (!append || file == null || !outputPath.equals(Paths.get(file)) || !Files.exists(outputPath)) {
+            return;
+        }
+        long checkpointLength = Long.parseLong(checkpoint.getProperty(FILE_LENGTH));
+        long fileLength = Files.size(outputPath);
+        if (fileLength > checkpointLength) {
+            logger.info("Truncating {} rows written after checkpoint, from {} to {} bytes", file, fileLength, checkpointLength);
+            try (FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.WRITE)) {
+                channel.truncate(checkpointLength);
+                channel.force(true);
+            }
+        } else if (fileLength < checkpointLength) {
+            throw new IllegalStateException("Export file " + file + " is shorter than its checkpoint of "
+                    + checkpointLength + " bytes");
+        }
+    }
+
+    private int findColumn(String[] columnLabels) {
+        for (int index = 0; index < columnLabels.length; index++) {
+            if (columnLabels[index].equalsIgnoreCase(sourceColumn)) {
+                return index;
+            }
+        }
+        throw new IllegalArgumentException("Watermark column " + watermarkColumn + " is not in the query result");
+    }
+
+    private static Properties readCheckpoint(Path checkpointPath) throws Exception {
+        Properties checkpoint = new Properties();
+        if (Files.exists(checkpointPath)) {
+            try (InputStream inputStream = new FileInputStream(checkpointPath.toFile())) {
+                checkpoint.load(inputStream);
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file, forces it to disk and renames it over the previous checkpoint.
+     */
+    private static void writeCheckpoint(Path checkpointPath, Properties checkpoint) throws Exception {
+        Path tempPath = Paths.get(checkpointPath + TEMP_SUFFIX);
+        try (FileOutputStream outputStream = new FileOutputStream(tempPath.toFile())) {
+            checkpoint.store(outputStream, "Incremental export checkpoint");
+            outputStream.getFD().sync();
+        }
+        Files.move(tempPath, checkpointPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static String watermarkType(Object watermark) {
+        if (watermark instanceof Long || watermark instanceof Integer || watermark instanceof Short
+                || watermark instanceof Byte) {
+            return "long";
+        } else if (watermark instanceof Number) {
+            return "decimal";
+        } else if (watermark instanceof java.sql.Date) {
+            return "date";
+        } else if (watermark instanceof java.util.Date) {
+            return "timestamp";
+        }
+        return "string";
+    }
+
+    static String formatWatermark(Object watermark) {
+        if (watermark instanceof BigDecimal) {
+            return ((BigDecimal) watermark).toPlainString();
+        } else if (watermark instanceof java.util.Date && !(watermark instanceof java.sql.Date)
+                && !(watermark instanceof Timestamp)) {
+            return new Timestamp(((java.util.Date) watermark).getTime()).toString();
+        }
+        return watermark.toString();
+    }
+
+    static Object parseWatermark(String type, String text) {
+        if (text == null) {
+            return null;
+        }
+        switch (type) {
+            case "long":
+                return Long.valueOf(text);
+            case "decimal":
+                return new BigDecimal(text);
+            case "date":
+                return java.sql.Date.valueOf(text);
+            case "timestamp":
+                return Timestamp.valueOf(text);
+            default:
+                return text;
+        }
+    }
+
+    private static String stripTrailingSemicolon(String sqlString) {
+        String sql = sqlString.trim();
+        while (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1).trim();
+        }
+        return sql;
+    }
+}
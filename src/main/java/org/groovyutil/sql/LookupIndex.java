@@ -0,0 +1,88 @@
+package org.groovyutil.sql;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * LookupIndex holds the rows of a preloaded query in memory keyed by one field, so per record lookups of reference
+ * data do not touch the database.  Integral keys are compared by value whatever their type, so a row loaded with a
+ * Long key is found with an Integer or a scale 0 BigDecimal.
+ *
+ * @param <T> the row type
+ */
+public class LookupIndex<T> {
+
+    private final String keyField;
+    private final HashMap<Object, T> rows;
+
+    LookupIndex(List<T> rowList, Class<T> rowClass, String keyField) throws Exception {
+        this.keyField = keyField;
+        this.rows = new HashMap<Object, T>(Math.max(16, rowList.size() * 4 / 3 + 1));
+
+        Field field = findField(rowClass, keyField);
+        field.setAccessible(true);
+        for (T row : rowList) {
+            Object key = normalize(field.get(row));
+            if (rows.containsKey(key)) {
+                throw new IllegalStateException("Duplicate key " + key + " for field " + keyField + " of " + rowClass.getName());
+            }
+            rows.put(key, row);
+        }
+    }
+
+    /**
+     * Returns the row with the key, or null when there is none.
+     */
+    public T get(Object key) {
+        return rows.get(normalize(key));
+    }
+
+    public boolean containsKey(Object key) {
+        return rows.containsKey(normalize(key));
+    }
+
+    public Collection<T> values() {
+        return Collections.unmodifiableCollection(rows.values());
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public String getKeyField() {
+        return keyField;
+    }
+
+    private static Field findField(Class<?> rowClass, String name) throws NoSuchFieldException {
+        for (Class<?> clazz = rowClass; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.getName().equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+        }
+        throw new NoSuchFieldException("No field " + name + " in " + rowClass.getName());
+    }
+
+    static Object normalize(Object key) {
+        if (key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte) {
+            return ((Number) key).longValue();
+        }
+        if (key instanceof BigInteger && ((BigInteger) key).bitLength() < 64) {
+            return ((BigInteger) key).longValue();
+        }
+        if (key instanceof BigDecimal) {
+            BigDecimal decimal = ((BigDecimal) key).stripTrailingZeros();
+            if (decimal.scale() <= 0 && decimal.precision() - decimal.scale() < 19) {
+                return decimal.longValueExact();
+            }
+            return decimal;
+        }
+        return key;
+    }
+}
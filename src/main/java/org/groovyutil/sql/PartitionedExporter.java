@@ -0,0 +1,228 @@
+package org.groovyutil.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * PartitionedExporter splits a query into key ranges on a numeric or date column and exports the ranges concurrently,
+ * each on a connection of its own, to part files that are optionally merged in key order into a single file.  The
+ * query is wrapped as <code>SELECT * FROM (query) WHERE split range</code>, so it must be usable as a derived table.
+ */
+final class PartitionedExporter {
+
+    public static Logger logger = LoggerFactory.getLogger(PartitionedExporter.class);
+
+    private final SqlContext sqlContext;
+    private final String sqlString;
+    private final String splitColumn;
+    private final String sourceColumn;
+    private final Object[] params;
+
+    PartitionedExporter(SqlContext sqlContext, String sqlString, String splitColumn, Object... params) {
+        this.sqlContext = sqlContext;
+        this.sqlString = stripTrailingSemicolon(sqlString);
+        this.splitColumn = splitColumn;
+        // the wrapper queries read the derived table, where a qualifier such as t.col no longer resolves
+        this.sourceColumn = splitColumn.substring(splitColumn.lastIndexOf('.') + 1);
+        this.params = params;
+    }
+
+    /**
+     * Returns the <code>partitions - 1</code> interior boundaries that split the range between the minimum and maximum
+     * of the split column evenly.  Integral columns split on whole numbers and date columns on milliseconds.
+     */
+    List<Object> computeBoundaries(int partitions) throws Exception {
+        Object min;
+        Object max;
+        String rangeSql = "SELECT MIN(" + sourceColumn + "), MAX(" + sourceColumn + ") FROM (" + sqlString
+                + ") partition_source";
+        try (SqlCursor cursor = sqlContext.openSqlCursor(rangeSql, params)) {
+            ResultSet resultSet = cursor.getResultSet();
+            resultSet.next();
+            min = resultSet.getObject(1);
+            max = resultSet.getObject(2);
+        }
+
+        ArrayList<Object> boundaries = new ArrayList<Object>();
+        if (min == null || max == null || partitions < 2) {
+            return boundaries;
+        }
+
+        if (min instanceof java.util.Date) {
+            long minMillis = ((java.util.Date) min).getTime();
+            long maxMillis = ((java.util.Date) max).getTime();
+            for (int partition = 1; partition < partitions; partition++) {
+                Timestamp boundary = new Timestamp(minMillis + (maxMillis - minMillis) / partitions * partition);
+                addDistinct(boundaries, boundary);
+            }
+        } else if (min instanceof Number) {
+            boolean integral = isIntegral((Number) min);
+            BigDecimal minValue = new BigDecimal(min.toString());
+            BigDecimal width = new BigDecimal(max.toString()).subtract(minValue)
+                    .divide(BigDecimal.valueOf(partitions), 10, RoundingMode.HALF_UP);
+            for (int partition = 1; partition < partitions; partition++) {
+                BigDecimal boundary = minValue.add(width.multiply(BigDecimal.valueOf(partition)));
+                if (integral) {
+                    addDistinct(boundaries, boundary.setScale(0, RoundingMode.CEILING).longValueExact());
+                } else {
+                    addDistinct(boundaries, boundary.stripTrailingZeros());
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Split column " + splitColumn + " must be numeric or a date, not "
+                    + min.getClass().getName());
+        }
+        return boundaries;
+    }
+
+    /**
+     * Exports one partition per range between consecutive boundaries, plus the open ranges below the first and above
+     * the last boundary, running up to <code>parallelism</code> partitions at once.
+     */
+    List<ExportPartition> export(String filename, List<?> boundaries, int parallelism, boolean merge) throws Exception {
+        ArrayList<ExportPartition> partitions = new ArrayList<ExportPartition>();
+        for (int partition = 0; partition <= boundaries.size(); partition++) {
+            partitions.add(new ExportPartition(partition,
+                    partition == 0 ? null : boundaries.get(partition - 1),
+                    partition == boundaries.size() ? null : boundaries.get(partition),
+                    partFilename(filename, partition)));
+        }
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, partitions.size())));
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+            for (ExportPartition partition : partitions) {
+                boolean partHeader = sqlContext.header && (!merge || partition.getPartition() == 0);
+                futures.add(executor.submit(() -> {
+                    exportPartition(partition, partHeader);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    for (Future<?> other : futures) {
+                        other.cancel(true);
+                    }
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } catch (Exception e) {
+            executor.shutdownNow();
+            for (ExportPartition partition : partitions) {
+                Files.deleteIfExists(Paths.get(partition.getFilename()));
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+
+        if (merge) {
+            mergePartFiles(filename, partitions);
+        }
+
+        long rowCnt = 0;
+        for (ExportPartition partition : partitions) {
+            rowCnt += partition.getRowCount();
+        }
+        logger.info("Partitioned Export Time = {} partitions = {} records = {}", System.currentTimeMillis() - startTime,
+                partitions.size(), rowCnt);
+        return partitions;
+    }
+
+    private void exportPartition(ExportPartition partition, boolean partHeader) throws Exception {
+        ArrayList<Object> partitionParams = new ArrayList<Object>(Arrays.asList(params));
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(sqlString).append(") partition_source WHERE ");
+
+        sql.append(partition.getPartition() == 0 ? "(" + sourceColumn + " IS NULL OR (" : "((");
+        if (partition.getLowerBound() != null) {
+            partitionParams.add(partition.getLowerBound());
+            sql.append(sourceColumn).append(" >= :p").append(partitionParams.size());
+        } else {
+            sql.append("1 = 1");
+        }
+        if (partition.getUpperBound() != null) {
+            partitionParams.add(partition.getUpperBound());
+            sql.append(" AND ").append(sourceColumn).append(" < :p").append(partitionParams.size());
+        }
+        sql.append("))");
+
+        long startTime = System.currentTimeMillis();
+        try (SqlContext partitionContext = new SqlContext(sqlContext.getSql2o())) {
+            partitionContext.delimiter = sqlContext.delimiter;
+            partitionContext.header = partHeader;
+            partitionContext.fetchSize = sqlContext.fetchSize;
+
+            try (SqlCursor cursor = partitionContext.openSqlCursor(sql.toString(), partitionParams.toArray())) {
+                long rowCnt = partitionContext.writeResultSetToFile(cursor, partition.getFilename());
+                partition.complete(rowCnt, System.currentTimeMillis() - startTime);
+            }
+        }
+        logger.info("Export {}", partition);
+    }
+
+    private static void mergePartFiles(String filename, List<ExportPartition> partitions) throws Exception {
+        try (FileChannel output = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (ExportPartition partition : partitions) {
+                Path partPath = Paths.get(partition.getFilename());
+                try (FileChannel input = FileChannel.open(partPath, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = input.size();
+                    while (position < size) {
+                        position += input.transferTo(position, size - position, output);
+                    }
+                }
+                Files.delete(partPath);
+            }
+        }
+    }
+
+    static String partFilename(String filename, int partition) {
+        return filename + String.format(".part%04d", partition);
+    }
+
+    private static boolean isIntegral(Number number) {
+        if (number instanceof BigDecimal) {
+            return ((BigDecimal) number).scale() <= 0;
+        }
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte || number instanceof BigInteger;
+    }
+
+    private static void addDistinct(List<Object> boundaries, Object boundary) {
+        if (boundaries.isEmpty() || !boundaries.get(boundaries.size() - 1).equals(boundary)) {
+            boundaries.add(boundary);
+        }
+    }
+
+    private static String stripTrailingSemicolon(String sqlString) {
+        String sql = sqlString.trim();
+        while (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1).trim();
+        }
+        return sql;
+    }
+
+}
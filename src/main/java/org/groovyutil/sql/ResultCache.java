@@ -0,0 +1,213 @@
+package org.groovyutil.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ResultCache is a read-through cache of query results keyed by SQL text, result class and parameters.  Entries expire
+ * <code>ttlMillis</code> after they are loaded, the least recently used entry is evicted once more than
+ * <code>maxEntries</code> are held, and entries are tagged with the tables named in their SQL so they can be
+ * invalidated by table.  Null results are cached as well, so repeated misses on reference data stay off the database.
+ * <p>
+ * Results are shared between callers and must be treated as read only.
+ */
+final class ResultCache {
+
+    private static final Pattern TABLE_PATTERN =
+            Pattern.compile("\\b(?:FROM|JOIN|INTO|UPDATE)\\s+([\\w.$\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+
+    private static final Object NULL_RESULT = new Object();
+
+    private static final class Key {
+        final String sql;
+        final Class<?> resultClass;
+        final Object[] params;
+        final int hash;
+
+        Key(String sql, Class<?> resultClass, Object[] params) {
+            this.sql = sql;
+            this.resultClass = resultClass;
+            this.params = params.clone();
+            this.hash = 31 * (31 * sql.hashCode() + resultClass.hashCode()) + Arrays.deepHashCode(this.params);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) object;
+            return hash == key.hash && sql.equals(key.sql) && resultClass == key.resultClass
+                    && Arrays.deepEquals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final Object result;
+        final long expiresAt;
+        final Set<String> tags;
+
+        Entry(Object result, long expiresAt, Set<String> tags) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.tags = tags;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private final HashMap<String, Set<Key>> keysByTag = new HashMap<String, Set<Key>>();
+
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    ResultCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns the cached result for the query, calling the loader and caching its result on a miss.  The loader runs
+     * outside the cache lock, so concurrent misses on the same key may each query the database, and a result loaded while
+     * the cache was invalidated is returned but not cached.
+     */
+    @SuppressWarnings("unchecked")
+    <R> R get(String sql, Class<?> resultClass, Object[] params, Supplier<R> loader) {
+        Key key = new Key(sql, resultClass, params);
+        long now = System.currentTimeMillis();
+        long loadGeneration;
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits++;
+                return entry.result == NULL_RESULT ? null : (R) entry.result;
+            }
+            if (entry != null) {
+                remove(key);
+                evictions++;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        R result = loader.get();
+
+        synchronized (this) {
+            if (loadGeneration != generation) {
+                return result;
+            }
+            Set<String> tags = tablesOf(sql);
+            entries.put(key, new Entry(result == null ? NULL_RESULT : result,
+                    ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE, tags));
+            for (String tag : tags) {
+                Set<Key> keys = keysByTag.get(tag);
+                if (keys == null) {
+                    keys = new HashSet<Key>();
+                    keysByTag.put(tag, keys);
+                }
+                keys.add(key);
+            }
+
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                Map.Entry<Key, Entry> eldestEntry = eldest.next();
+                removeTags(eldestEntry.getKey(), eldestEntry.getValue());
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops every entry whose SQL names the table, ignoring case and any schema prefix.
+     */
+    synchronized void invalidate(String table) {
+        generation++;
+        Set<Key> keys = keysByTag.remove(normalize(table));
+        if (keys != null) {
+            for (Key key : new ArrayList<Key>(keys)) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops the entries of every table named in a statement, typically one that has just modified them.
+     */
+    synchronized void invalidateTablesOf(String sql) {
+        for (String table : tablesOf(sql)) {
+            invalidate(table);
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+        keysByTag.clear();
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hits, misses, evictions, entries.size());
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            removeTags(key, entry);
+        }
+    }
+
+    private void removeTags(Key key, Entry entry) {
+        for (String tag : entry.tags) {
+            Set<Key> keys = keysByTag.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTag.remove(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the tables named after FROM, JOIN, INTO and UPDATE in the SQL, upper case and without schema or quotes.
+     */
+    static Set<String> tablesOf(String sql) {
+        LinkedHashSet<String> tables = new LinkedHashSet<String>();
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        while (matcher.find()) {
+            String table = normalize(matcher.group(1));
+            if (!table.isEmpty()) {
+                tables.add(table);
+            }
+        }
+        return tables;
+    }
+
+    private static String normalize(String table) {
+        String name = table.replaceAll("[\"`\\[\\]]", "");
+        int schemaEnd = name.lastIndexOf('.');
+        return name.substring(schemaEnd + 1).toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,521 @@
+package org.groovyutil.sql;
+
+import com.univocity.parsers.csv.CsvWriter;
+import com.univocity.parsers.csv.CsvWriterSettings;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+import org.sql2o.data.Column;
+import org.sql2o.data.Row;
+import org.sql2o.data.Table;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * SqlContext is the instance form of {@link SqlUtility}: it offers the same queries and exports on a connection of its
+ * own, so concurrent jobs and worker threads do not share state.  A context borrows a connection from its Sql2o, which
+ * is pooled when opened with {@link SqlUtility#OpenSqlConnectionPool}, on first use and returns it on {@link #close()}.
+ * The settings are copied from the SqlUtility statics when the context is created.
+ * <p>
+ * A context is meant to be used by one thread at a time.
+ * <pre>
+ * try (SqlContext sqlContext = SqlUtility.OpenSqlContext()) {
+ *     sqlContext.exportSqlQueryToFile("trades.txt", "select * from trade where trade_date = :p1", tradeDate);
+ * }
+ * </pre>
+ */
+public class SqlContext implements AutoCloseable {
+
+    private static final int FILE_BUFFER_SIZE = 1024 * 1024;
+    private static final int EXCEL_MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final int EXCEL_NUMBER_PRECISION = 15;
+
+    public char delimiter = SqlUtility.delimiter;
+    public boolean header = SqlUtility.header;
+    public int fetchSize = SqlUtility.fetchSize;
+    public int excelRowWindow = SqlUtility.excelRowWindow;
+    public int batchSize = SqlUtility.batchSize;
+    public int commitInterval = SqlUtility.commitInterval;
+    public int rowsPerInsert = SqlUtility.rowsPerInsert;
+    public int statementCacheSize = SqlUtility.statementCacheSize;
+    public boolean nativeBulkLoad = SqlUtility.nativeBulkLoad;
+
+    private static final MethodHandle QUERY_STATEMENT = queryStatementGetter();
+
+    private final ResultCache resultCache = SqlUtility.resultCache;
+    private final Sql2o sql2o;
+    private final boolean ownsConnection;
+    private Connection connection;
+    private StatementCache statementCache;
+    private volatile Query runningQuery;
+
+    public SqlContext(Sql2o sql2o) {
+        this.sql2o = sql2o;
+        this.ownsConnection = true;
+    }
+
+    /**
+     * Creates a context over a connection and statement cache owned by the caller, which are left open on close.
+     */
+    SqlContext(Sql2o sql2o, Connection connection, StatementCache statementCache) {
+        this.sql2o = sql2o;
+        this.connection = connection;
+        this.statementCache = statementCache;
+        this.ownsConnection = false;
+    }
+
+    public Sql2o getSql2o() {
+        return sql2o;
+    }
+
+    /**
+     * Returns the connection of this context, borrowing it on first use.
+     */
+    public Connection getConnection() {
+        if (connection == null) {
+            connection = sql2o.open();
+        }
+        return connection;
+    }
+
+    StatementCache getStatementCache() {
+        if (statementCache == null) {
+            statementCache = new StatementCache(getConnection(), statementCacheSize);
+        }
+        return statementCache;
+    }
+
+    /**
+     * Returns the hit and miss counts of the prepared statement cache of this context.
+     */
+    public CacheStatistics getStatementCacheStatistics() {
+        return getStatementCache().getStatistics();
+    }
+
+    public void exportSqlFileQueryToFile(String sqlQueryFilename, String outputFilename, Object... params) throws Exception {
+        String sqlQuery = SqlFileCache.SHARED.read(sqlQueryFilename);
+        exportSqlQueryToFile(outputFilename, sqlQuery, params);
+    }
+
+    public void exportSqlFileQueryToExcel(String sqlQueryFilename, String outputFilename, Object... params) throws Exception {
+        String sqlQuery = SqlFileCache.SHARED.read(sqlQueryFilename);
+        exportSqlQueryToExcel(outputFilename, sqlQuery, params);
+    }
+
+    public ArrayList<ArrayList<Object>> genericSqlFileQuery(String sqlQueryFilename, Object... params) throws Exception {
+        String sqlQuery = SqlFileCache.SHARED.read(sqlQueryFilename);
+        return genericSqlQuery(sqlQuery, params);
+    }
+
+    public ArrayList<ArrayList<Object>> genericSqlQuery(String sqlString, Object... params) {
+        Query query = getStatementCache().getQuery(sqlString, params);
+        Table table = query.executeAndFetchTable();
+
+        ArrayList<ArrayList<Object>> results = new ArrayList<>();
+        ArrayList<Object> resultRow = new ArrayList<>();
+
+        for(Column column : table.columns()) {
+            resultRow.add(column.getName());
+        }
+
+        results.add(resultRow);
+
+        int columnCount = table.columns().size();
+        for (Row row : table.rows()) {
+            resultRow = new ArrayList<>(columnCount);
+
+            for (int column = 0; column < columnCount; column++) {
+                resultRow.add(row.getObject(column));
+            }
+            results.add(resultRow);
+        }
+
+        return results;
+    }
+
+    public ColumnarResult genericSqlFileQueryColumnar(String sqlQueryFilename, Object... params) throws Exception {
+        String sqlQuery = SqlFileCache.SHARED.read(sqlQueryFilename);
+        return genericSqlQueryColumnar(sqlQuery, params);
+    }
+
+    /**
+     * Runs the query into a {@link ColumnarResult}, reading the rows from a forward only cursor straight into primitive
+     * column arrays.
+     */
+    public ColumnarResult genericSqlQueryColumnar(String sqlString, Object... params) throws Exception {
+        try (SqlCursor cursor = openSqlCursor(sqlString, params)) {
+            return ColumnarResult.read(cursor.getResultSet());
+        }
+    }
+
+    /**
+     * Streams the query result to a delimited file.  Rows are read from a forward only cursor, copied into a single
+     * reused row buffer and written through a 1MB buffered writer, so memory use does not depend on the size of the
+     * result.
+     */
+    public void exportSqlQueryToFile(String filename, String sqlString, Object... params) throws Exception {
+
+        try (SqlCursor cursor = openSqlCursor(sqlString, params)) {
+            writeResultSetToFile(cursor, filename);
+        }
+    }
+
+    long writeResultSetToFile(SqlCursor cursor, String filename) throws Exception {
+        try (Writer writer = createFileWriter(new FileOutputStream(filename))) {
+            return writeResultSet(cursor, writer, header, new Object[cursor.getColumnLabels().length]);
+        }
+    }
+
+    static Writer createFileWriter(OutputStream outputStream) {
+        return new BufferedWriter(new OutputStreamWriter(outputStream, Charset.defaultCharset()), FILE_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the rows of the cursor to the writer as delimited text and flushes it, leaving the writer open.  Each row is
+     * copied into <code>row</code>, which holds the last row written on return.
+     */
+    long writeResultSet(SqlCursor cursor, Writer writer, boolean writeHeader, Object[] row) throws Exception {
+
+        CsvWriterSettings settings = new CsvWriterSettings();
+        settings.getFormat().setDelimiter(delimiter);
+        CsvWriter csvWriter = new CsvWriter(writer, settings);
+
+        if (writeHeader) {
+            csvWriter.writeRow((Object[]) cursor.getColumnLabels());
+        }
+
+        ResultSet resultSet = cursor.getResultSet();
+        long rowCnt = 0;
+        while (resultSet.next()) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = resultSet.getObject(column + 1);
+            }
+            csvWriter.writeRow(row);
+            rowCnt++;
+        }
+        csvWriter.flush();
+        return rowCnt;
+    }
+
+    /**
+     * Exports the rows of the query whose <code>watermarkColumn</code>, an increasing id or timestamp, is above the high
+     * water mark saved in <code>checkpointFilename</code> by the previous run, or every row on the first run, and saves
+     * the new high water mark once the rows are on disk.  With <code>append</code> the rows are added to
+     * <code>filename</code>, otherwise it is replaced.  See {@link IncrementalExporter} for how a failed run is recovered.
+     *
+     * @return the number of rows exported
+     */
+    public long exportSqlQueryToFileIncremental(String filename, String sqlString, String watermarkColumn,
+                                                String checkpointFilename, boolean append, Object... params) throws Exception {
+        return new IncrementalExporter(this, sqlString, watermarkColumn, params).export(filename, checkpointFilename, append);
+    }
+
+    /**
+     * Exports the query in <code>partitions</code> key ranges of <code>splitColumn</code>, a numeric or date column,
+     * split evenly between its minimum and maximum.  See
+     * {@link #exportSqlQueryToFilePartitioned(String, String, String, List, int, boolean, Object...)}.
+     */
+    public List<ExportPartition> exportSqlQueryToFilePartitioned(String filename, String sqlString, String splitColumn,
+                                                                 int partitions, boolean merge, Object... params) throws Exception {
+        PartitionedExporter exporter = new PartitionedExporter(this, sqlString, splitColumn, params);
+        return exporter.export(filename, exporter.computeBoundaries(partitions), partitions, merge);
+    }
+
+    /**
+     * Exports the query in key ranges of <code>splitColumn</code> divided at the given ascending boundaries, each range
+     * streamed concurrently on a connection of its own, up to <code>parallelism</code> at once.  Ranges are written to
+     * <code>filename.part0000</code>, <code>filename.part0001</code> and so on; when <code>merge</code> is set the parts
+     * are concatenated into <code>filename</code> in key order, with a single header, and removed.  The rows and
+     * rows/sec of each range are logged and returned.
+     */
+    public List<ExportPartition> exportSqlQueryToFilePartitioned(String filename, String sqlString, String splitColumn,
+                                                                 List<?> boundaries, int parallelism, boolean merge,
+                                                                 Object... params) throws Exception {
+        return new PartitionedExporter(this, sqlString, splitColumn, params).export(filename, boundaries, parallelism, merge);
+    }
+
+    /**
+     * Streams the query result into an .xlsx file.  Rows are read from a forward only cursor and written through an
+     * SXSSF workbook that keeps only <code>excelRowWindow</code> rows in memory, flushing the rest to compressed
+     * temporary files.  Numbers, booleans, dates and timestamps are written as typed cells.  When a sheet reaches the
+     * Excel row limit the export continues on a new sheet, repeating the header.
+     */
+    public void exportSqlQueryToExcel(String filename, String sqlString, Object... params) throws Exception {
+
+        try (SqlCursor cursor = openSqlCursor(sqlString, params)) {
+            writeResultSetToExcel(cursor, filename, EXCEL_MAX_ROWS);
+        }
+    }
+
+    long writeResultSetToExcel(SqlCursor cursor, String filename, int maxRowsPerSheet) throws Exception {
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, excelRowWindow, true);
+
+        try {
+            String[] columnLabels = cursor.getColumnLabels();
+            CreationHelper creationHelper = workbook.getCreationHelper();
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(creationHelper.createDataFormat().getFormat("yyyy-mm-dd"));
+            CellStyle dateTimeStyle = workbook.createCellStyle();
+            dateTimeStyle.setDataFormat(creationHelper.createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+
+            ResultSet resultSet = cursor.getResultSet();
+            Sheet spreadsheet = createExcelSheet(workbook, columnLabels);
+            int rowId = header ? 1 : 0;
+            long rowCnt = 0;
+
+            while (resultSet.next()) {
+                if (rowId >= maxRowsPerSheet) {
+                    spreadsheet = createExcelSheet(workbook, columnLabels);
+                    rowId = header ? 1 : 0;
+                }
+
+                org.apache.poi.ss.usermodel.Row spreadSheetRow = spreadsheet.createRow(rowId++);
+                for (int cellId = 0; cellId < columnLabels.length; cellId++) {
+                    Object object = resultSet.getObject(cellId + 1);
+                    if (object != null) {
+                        setExcelCellValue(spreadSheetRow.createCell(cellId), object, dateStyle, dateTimeStyle);
+                    }
+                }
+                rowCnt++;
+            }
+
+            try (FileOutputStream fileOutputStream = new FileOutputStream(new File(filename))) {
+                workbook.write(fileOutputStream);
+            }
+            return rowCnt;
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    private Sheet createExcelSheet(SXSSFWorkbook workbook, String[] columnLabels) {
+        int sheetCnt = workbook.getNumberOfSheets();
+        Sheet spreadsheet = workbook.createSheet(sheetCnt == 0 ? "Default" : "Default " + (sheetCnt + 1));
+
+        if (header) {
+            org.apache.poi.ss.usermodel.Row spreadSheetRow = spreadsheet.createRow(0);
+            for (int cellId = 0; cellId < columnLabels.length; cellId++) {
+                spreadSheetRow.createCell(cellId).setCellValue(columnLabels[cellId]);
+            }
+        }
+        return spreadsheet;
+    }
+
+    private static void setExcelCellValue(Cell cell, Object object, CellStyle dateStyle, CellStyle dateTimeStyle) {
+        if (object instanceof BigDecimal && ((BigDecimal) object).precision() > EXCEL_NUMBER_PRECISION) {
+            // beyond the precision of an Excel number, so keep every digit as text
+            cell.setCellValue(((BigDecimal) object).toPlainString());
+        } else if (object instanceof BigInteger && ((BigInteger) object).bitLength() > 53) {
+            cell.setCellValue(object.toString());
+        } else if (object instanceof Number) {
+            cell.setCellValue(((Number) object).doubleValue());
+        } else if (object instanceof Boolean) {
+            cell.setCellValue((Boolean) object);
+        } else if (object instanceof Timestamp) {
+            cell.setCellValue((Timestamp) object);
+            cell.setCellStyle(dateTimeStyle);
+        } else if (object instanceof java.sql.Date) {
+            cell.setCellValue((java.sql.Date) object);
+            cell.setCellStyle(dateStyle);
+        } else {
+            cell.setCellValue(object.toString());
+        }
+    }
+
+    /**
+     * Opens a forward only cursor for the query on the connection of this context.
+     */
+    SqlCursor openSqlCursor(String sqlString, Object... params) throws SQLException {
+        return new SqlCursor(getConnection().getJdbcConnection(), sql2o.getQuirks(), sqlString, fetchSize, params);
+    }
+
+    /**
+     * Runs the query and maps each row to a bean.  When the result cache is enabled with
+     * {@link SqlUtility#EnableResultCache} the list is read through it and is unmodifiable.
+     */
+    public <T> List<T> executeSqlToList(String sql, Class<T> clazz, Object... params) {
+        if (resultCache != null) {
+            return resultCache.get(sql, clazz, params, () -> Collections.unmodifiableList(fetchList(sql, clazz, params)));
+        }
+        return fetchList(sql, clazz, params);
+    }
+
+    private <T> List<T> fetchList(String sql, Class<T> clazz, Object... params) {
+        Query query = getStatementCache().getQuery(sql, params);
+        runningQuery = query;
+        try {
+            return query.executeAndFetch(clazz);
+        } finally {
+            runningQuery = null;
+        }
+    }
+
+    /**
+     * Returns the first row of the query as a bean, or null.  When the result cache is enabled with
+     * {@link SqlUtility#EnableResultCache} the bean is read through it.
+     */
+    public <T> T sqlFindOne(String sql, Class<T> clazz, Object... params) {
+        if (resultCache != null) {
+            return resultCache.get(sql, clazz, params, () -> fetchFirst(sql, clazz, params));
+        }
+        return fetchFirst(sql, clazz, params);
+    }
+
+    private <T> T fetchFirst(String sql, Class<T> clazz, Object... params) {
+        Query query = getStatementCache().getQuery(sql, params);
+        runningQuery = query;
+        try {
+            return query.executeAndFetchFirst(clazz);
+        } finally {
+            runningQuery = null;
+        }
+    }
+
+    /**
+     * Loads every row of the query into an index keyed by the named field of the bean, for lookups that no longer go
+     * to the database.  The key field must be unique.
+     */
+    public <T> LookupIndex<T> preloadIndex(String sql, Class<T> clazz, String keyField, Object... params) throws Exception {
+        Query query = getStatementCache().getQuery(sql, params);
+        return new LookupIndex<T>(query.executeAndFetch(clazz), clazz, keyField);
+    }
+
+    public void executeSql(String sqlString, Object... params) throws Exception {
+        Query query = getStatementCache().getQuery(sqlString, params);
+        runningQuery = query;
+        try {
+            query.executeUpdate();
+        } finally {
+            runningQuery = null;
+        }
+        if (resultCache != null) {
+            resultCache.invalidateTablesOf(sqlString);
+        }
+    }
+
+    public void executeSqlFile(String sqlFilename, Object... params) throws Exception {
+        String sqlQuery = SqlFileCache.SHARED.read(sqlFilename);
+        executeSql(sqlQuery, params);
+    }
+
+    /**
+     * Inserts the beans into the table in JDBC batches of <code>batchSize</code> rows, committing every
+     * <code>commitInterval</code> rows.  The columns are the names of the beans' {@link org.groovyutil.record.DataField}
+     * annotated output fields.  Set <code>rowsPerInsert</code> above 1 to send multi-row INSERT statements.
+     *
+     * @return the number of rows inserted
+     */
+    public <T> long bulkLoad(String table, Class<T> beanClass, Iterable<? extends T> beans) throws Exception {
+        try {
+            return new BulkLoader<T>(table, beanClass).load(getConnection().getJdbcConnection(), beans.iterator(),
+                    batchSize, commitInterval, rowsPerInsert);
+        } finally {
+            invalidateResultCache(table);
+        }
+    }
+
+    public <T> long bulkLoad(String table, Class<T> beanClass, Stream<? extends T> beans) throws Exception {
+        try (Stream<? extends T> beanStream = beans) {
+            return new BulkLoader<T>(table, beanClass).load(getConnection().getJdbcConnection(), beanStream.iterator(),
+                    batchSize, commitInterval, rowsPerInsert);
+        } finally {
+            invalidateResultCache(table);
+        }
+    }
+
+    /**
+     * Loads a delimited file, written with <code>delimiter</code> and <code>header</code>, into the table.  When
+     * <code>nativeBulkLoad</code> is set the native load of PostgreSQL, MySQL or H2 is used, and batched inserts
+     * otherwise.  See {@link FileBulkLoader}.
+     *
+     * @return the number of rows loaded
+     */
+    public long bulkLoadFile(String table, String filename) throws Exception {
+        try {
+            return new FileBulkLoader(table, delimiter, header).load(getConnection().getJdbcConnection(), filename,
+                    nativeBulkLoad, batchSize, commitInterval);
+        } finally {
+            invalidateResultCache(table);
+        }
+    }
+
+    private void invalidateResultCache(String table) {
+        if (resultCache != null) {
+            resultCache.invalidate(table);
+        }
+    }
+
+    /**
+     * Cancels the query, list or update running on this context, if any.  This is the one method that may be called
+     * from another thread.
+     */
+    public void cancel() throws SQLException {
+        Query query = runningQuery;
+        if (query != null) {
+            try {
+                ((PreparedStatement) QUERY_STATEMENT.invoke(query)).cancel();
+            } catch (SQLException | RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * sql2o 1.5 does not expose the statement of a Query, which is needed to cancel it.
+     */
+    private static MethodHandle queryStatementGetter() {
+        try {
+            Field statement = Query.class.getDeclaredField("statement");
+            statement.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(statement);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the connection to the pool, or closes it when the Sql2o is not pooled.
+     */
+    @Override
+    public void close() {
+        if (ownsConnection && connection != null) {
+            try {
+                if (statementCache != null) {
+                    statementCache.clear();
+                }
+            } finally {
+                connection.close();
+                connection = null;
+                statementCache = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.groovyutil.sql;
+
+import org.sql2o.quirks.Quirks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SqlCursor runs a query on a forward only, read only statement and exposes its ResultSet, so rows can be consumed
+ * as the driver fetches them instead of being collected into a sql2o Table first.  Parameters follow
+ * {@link org.sql2o.Connection#createQueryWithParams}: the SQL refers to them as <code>:p1</code>, <code>:p2</code> and
+ * so on, and they are bound through the sql2o quirks of the connection.
+ * <p>
+ * Some drivers only stream with a cursor outside auto-commit, PostgreSQL among them, so auto-commit is switched off
+ * for the life of the cursor and restored on close.
+ */
+final class SqlCursor implements Closeable {
+
+    private final Connection jdbcConnection;
+    private final boolean autoCommit;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+
+    SqlCursor(Connection jdbcConnection, Quirks quirks, String sqlString, int fetchSize, Object... params) throws SQLException {
+        this.jdbcConnection = jdbcConnection;
+        this.autoCommit = jdbcConnection.getAutoCommit();
+
+        Map<String, List<Integer>> parameterIndexes = new HashMap<>();
+        String parsedSql = quirks.getSqlParameterParsingStrategy().parseSql(sqlString, parameterIndexes);
+
+        PreparedStatement preparedStatement = null;
+        try {
+            if (autoCommit) {
+                jdbcConnection.setAutoCommit(false);
+            }
+            preparedStatement = jdbcConnection.prepareStatement(parsedSql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(fetchSize);
+
+            for (int paramCnt = 0; paramCnt < params.length; paramCnt++) {
+                List<Integer> indexes = parameterIndexes.get("p" + (paramCnt + 1));
+                if (indexes == null) {
+                    throw new SQLException("Parameter :p" + (paramCnt + 1) + " not found in query");
+                }
+                for (Integer index : indexes) {
+                    quirks.setParameter(preparedStatement, index, params[paramCnt]);
+                }
+            }
+
+            this.statement = preparedStatement;
+            this.resultSet = preparedStatement.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            if (preparedStatement != null) {
+                preparedStatement.close();
+            }
+            restoreAutoCommit();
+            throw e;
+        }
+    }
+
+    ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    ResultSetMetaData getMetaData() throws SQLException {
+        return resultSet.getMetaData();
+    }
+
+    /**
+     * Returns the column labels of the result.
+     */
+    String[] getColumnLabels() throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        String[] labels = new String[metaData.getColumnCount()];
+        for (int column = 0; column < labels.length; column++) {
+            labels[column] = metaData.getColumnLabel(column + 1);
+        }
+        return labels;
+    }
+
+    private void restoreAutoCommit() throws SQLException {
+        if (autoCommit) {
+            jdbcConnection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                resultSet.close();
+            } finally {
+                try {
+                    statement.close();
+                } finally {
+                    restoreAutoCommit();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.groovyutil.sql;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SqlFileCache holds the text of recently read SQL files, so scripts that run the same SQL file in a loop read it from
+ * disk once.  An entry is reread when the modification time or length of its file changes, and the least recently used
+ * entry is dropped once more than <code>capacity</code> files are cached.
+ */
+final class SqlFileCache {
+
+    static final SqlFileCache SHARED = new SqlFileCache(256);
+
+    private static final class Entry {
+        final long lastModified;
+        final long length;
+        final String sql;
+
+        Entry(long lastModified, long length, String sql) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.sql = sql;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private int capacity;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    SqlFileCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    String read(String sqlFilename) throws IOException {
+        File file = new File(sqlFilename);
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+                hits++;
+                return entry.sql;
+            }
+            misses++;
+        }
+
+        String sql = FileUtils.readFileToString(file);
+
+        synchronized (this) {
+            if (capacity > 0) {
+                entries.put(key, new Entry(lastModified, length, sql));
+                evict();
+            }
+        }
+        return sql;
+    }
+
+    synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        evict();
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hits, misses, evictions, entries.size());
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > capacity && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+}
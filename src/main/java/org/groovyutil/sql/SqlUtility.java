@@ -1,41 +1,81 @@
 package org.groovyutil.sql;
 
-import com.univocity.parsers.csv.CsvWriter;
-import com.univocity.parsers.csv.CsvWriterSettings;
-import org.apache.commons.io.FileUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.sql2o.Connection;
-import org.sql2o.Query;
 import org.sql2o.Sql2o;
-import org.sql2o.data.Column;
-import org.sql2o.data.Row;
-import org.sql2o.data.Table;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 
 public class SqlUtility {
 
     private static Sql2o sql2o;
     private static Connection connection;
+    private static HikariDataSource dataSource;
+    private static StatementCache statementCache;
+    static ResultCache resultCache;
+    private static AsyncSqlExecutor asyncExecutor;
     public static char delimiter = '|';
     public static boolean header = true;
 
+    /**
+     * Number of rows the driver is asked to fetch per round trip by the streaming exports.
+     */
+    public static int fetchSize = 10000;
+
+    /**
+     * Number of rows held in memory by the Excel export before they are flushed to a temporary file.
+     */
+    public static int excelRowWindow = 1000;
+
+    /**
+     * Number of rows sent to the database per JDBC batch by {@link #BulkLoad}.
+     */
+    public static int batchSize = 1000;
+
+    /**
+     * Number of rows {@link #BulkLoad} inserts between commits, or 0 to commit once at the end.
+     */
+    public static int commitInterval = 10000;
+
+    /**
+     * Number of rows {@link #BulkLoad} puts in each INSERT statement.  Values above 1 send multi-row inserts.
+     */
+    public static int rowsPerInsert = 1;
+
+    /**
+     * Number of prepared statements cached per connection, keyed by SQL text.  0 disables the cache.
+     */
+    public static int statementCacheSize = 64;
+
+    /**
+     * Number of threads that run the Async methods.  0 uses one less than the maximum pool size, leaving the connection
+     * of the static methods, or the number of processors when no pool is open.
+     */
+    public static int asyncThreads = 0;
+
+    /**
+     * Milliseconds after which an Async query without a timeout of its own is cancelled, or 0 for no timeout.
+     */
+    public static long asyncTimeoutMillis = 0;
+
+    /**
+     * Whether {@link #BulkLoadFile} uses the native bulk load of the database where there is one.
+     */
+    public static boolean nativeBulkLoad = true;
+
     public static void OpenSqlConnection() throws IOException {
         OpenSqlConnection("application.properties");
     }
 
     public static void OpenSqlConnection(String propertyFile) throws IOException {
-        Properties properties = new Properties();
-        InputStream inputStream = SqlUtility.class.getResourceAsStream("/" + propertyFile);
-        properties.load(inputStream);
+        Properties properties = LoadProperties(propertyFile);
 
         String dbUrl = properties.getProperty("db.url");
         String user = properties.getProperty("db.user");
@@ -47,130 +87,304 @@ public class SqlUtility {
     public static void OpenSqlConnection(String dbUrl, String user, String password) {
         sql2o = new Sql2o(dbUrl, user, password);
         connection = sql2o.open();
+        statementCache = new StatementCache(connection, statementCacheSize);
     }
 
-    public static void CloseSqlConnection() {
-        connection.close();
-    }
+    /**
+     * Opens a connection pool configured by the <code>db.url</code>, <code>db.user</code> and <code>db.password</code>
+     * properties, and optionally <code>db.pool.minSize</code>, <code>db.pool.maxSize</code>,
+     * <code>db.pool.idleTimeout</code> in milliseconds and <code>db.pool.validationQuery</code>.
+     */
+    public static void OpenSqlConnectionPool(String propertyFile) throws IOException {
+        Properties properties = LoadProperties(propertyFile);
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(properties.getProperty("db.url"));
+        config.setUsername(properties.getProperty("db.user"));
+        config.setPassword(properties.getProperty("db.password"));
+        config.setMinimumIdle(Integer.parseInt(properties.getProperty("db.pool.minSize", "1")));
+        config.setMaximumPoolSize(Integer.parseInt(properties.getProperty("db.pool.maxSize", "10")));
+        config.setIdleTimeout(Long.parseLong(properties.getProperty("db.pool.idleTimeout", "600000")));
+        if (properties.getProperty("db.pool.validationQuery") != null) {
+            config.setConnectionTestQuery(properties.getProperty("db.pool.validationQuery"));
+        }
 
-    public static void ExportSqlFileQueryToFile(String sqlQueryFilename, String outputFilename, Object... params) throws Exception {
-        String sqlQuery = FileUtils.readFileToString(new File(sqlQueryFilename));
-        ExportSqlQueryToFile(outputFilename, sqlQuery, params);
+        OpenSqlConnectionPool(config);
     }
 
-    public static void ExportSqlFileQueryToExcel(String sqlQueryFilename, String outputFilename, Object... params) throws Exception {
-        String sqlQuery = FileUtils.readFileToString(new File(sqlQueryFilename));
-        ExportSqlQueryToExcel(outputFilename, sqlQuery, params);
-    }
+    public static void OpenSqlConnectionPool(String dbUrl, String user, String password, int minSize, int maxSize) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(dbUrl);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMinimumIdle(minSize);
+        config.setMaximumPoolSize(maxSize);
 
-    public static ArrayList<ArrayList<Object>> GenericSqlFileQuery(String sqlQueryFilename, Object... params) throws Exception {
-        String sqlQuery = FileUtils.readFileToString(new File(sqlQueryFilename));
-        return GenericSqlQuery(sqlQuery, params);
+        OpenSqlConnectionPool(config);
     }
 
-    public static ArrayList<ArrayList<Object>> GenericSqlQuery(String sqlString, Object... params) {
-        Query query = connection.createQueryWithParams(sqlString, params);
-        Table table = query.executeAndFetchTable();
-
-        ArrayList<ArrayList<Object>> results = new ArrayList<>();
-        ArrayList<Object> resultRow = new ArrayList<>();
+    /**
+     * Opens a connection pool.  Connections are validated when borrowed, with the JDBC4 <code>isValid</code> check
+     * unless a connection test query is configured, and idle connections above the minimum are evicted after the idle
+     * timeout.  The static methods keep using one connection borrowed from the pool; use {@link #OpenSqlContext()} to
+     * give each job or thread a connection of its own.
+     */
+    public static void OpenSqlConnectionPool(HikariConfig config) {
+        dataSource = new HikariDataSource(config);
+        sql2o = new Sql2o(dataSource);
+        connection = sql2o.open();
+        statementCache = new StatementCache(connection, statementCacheSize);
+    }
 
-        for(Column column : table.columns()) {
-            resultRow.add(column.getName());
+    /**
+     * Returns a new context with its own connection, borrowed from the pool when one is open.  Close the context to
+     * return the connection.
+     */
+    public static SqlContext OpenSqlContext() {
+        if (sql2o == null) {
+            throw new IllegalStateException("No sql connection is open");
         }
+        return new SqlContext(sql2o);
+    }
 
-        results.add(resultRow);
+    public static void CloseSqlConnection() {
+        synchronized (SqlUtility.class) {
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+                asyncExecutor = null;
+            }
+        }
+        try {
+            statementCache.clear();
+            connection.close();
+        } finally {
+            if (dataSource != null) {
+                dataSource.close();
+                dataSource = null;
+            }
+        }
+    }
 
-        for (Row row : table.rows()) {
-            resultRow = new ArrayList<>();
+    private static Properties LoadProperties(String propertyFile) throws IOException {
+        Properties properties = new Properties();
+        InputStream inputStream = SqlUtility.class.getResourceAsStream("/" + propertyFile);
+        properties.load(inputStream);
+        return properties;
+    }
 
-            Collection<Object> objectArray = row.asMap().values();
-            for (Object object : objectArray) {
-                resultRow.add(object);
-            }
-            results.add(resultRow);
+    static synchronized AsyncSqlExecutor AsyncExecutor() {
+        if (sql2o == null) {
+            throw new IllegalStateException("No sql connection is open");
+        }
+        if (asyncExecutor == null) {
+            int threads = asyncThreads > 0 ? asyncThreads
+                    : dataSource != null ? Math.max(1, dataSource.getMaximumPoolSize() - 1)
+                    : Runtime.getRuntime().availableProcessors();
+            asyncExecutor = new AsyncSqlExecutor(sql2o, threads);
         }
+        return asyncExecutor;
+    }
 
-        return results;
+    /**
+     * Returns a context over the static connection that reflects the current static settings.
+     */
+    static SqlContext StaticContext() {
+        return new SqlContext(sql2o, connection, statementCache);
     }
 
-    public static void ExportSqlQueryToFile(String filename, String sqlString, Object... params) throws Exception {
+    /**
+     * Returns the hit and miss counts of the prepared statement cache of the static connection.
+     */
+    public static CacheStatistics StatementCacheStatistics() {
+        return statementCache.getStatistics();
+    }
+
+    /**
+     * Returns the hit and miss counts of the cache of SQL file contents shared by the static methods and contexts.
+     */
+    public static CacheStatistics SqlFileCacheStatistics() {
+        return SqlFileCache.SHARED.getStatistics();
+    }
 
-        ArrayList<ArrayList<Object>> exportList = GenericSqlQuery(sqlString, params);
+    /**
+     * Sets the number of SQL files whose contents are cached, 0 to disable the cache.
+     */
+    public static void SetSqlFileCacheSize(int capacity) {
+        SqlFileCache.SHARED.setCapacity(capacity);
+    }
 
-        FileWriter fileWriter = new FileWriter(filename);
-        CsvWriterSettings settings = new CsvWriterSettings();
-        settings.getFormat().setDelimiter(delimiter);
-        settings.setHeaderWritingEnabled(header);
+    /**
+     * Caches the results of {@link #SqlFindOne} and {@link #ExecuteSqlToList}, and of the same methods of contexts opened
+     * afterwards, keyed by SQL and parameters.  Entries expire <code>ttlMillis</code> after they are loaded, or never
+     * when it is 0, and the least recently used entry is dropped once more than <code>maxEntries</code> are cached.
+     * {@link #ExecuteSql} and {@link #BulkLoad} invalidate the entries of the tables they write; changes made by other
+     * means need {@link #InvalidateResultCache}.
+     */
+    public static void EnableResultCache(int maxEntries, long ttlMillis) {
+        resultCache = new ResultCache(maxEntries, ttlMillis);
+    }
 
-        CsvWriter csvWriter = new CsvWriter(fileWriter, settings);
+    public static void DisableResultCache() {
+        resultCache = null;
+    }
 
-        if (header) {
-            csvWriter.writeRow(exportList.get(0));
+    /**
+     * Drops the cached results of every query that names the table.
+     */
+    public static void InvalidateResultCache(String table) {
+        if (resultCache != null) {
+            resultCache.invalidate(table);
         }
+    }
 
-        for (int rowCount = 1; rowCount < exportList.size(); rowCount++) {
-            csvWriter.writeRow(exportList.get(rowCount));
+    /**
+     * Drops every cached result.
+     */
+    public static void InvalidateResultCache() {
+        if (resultCache != null) {
+            resultCache.clear();
         }
+    }
 
-        csvWriter.close();
-        fileWriter.close();
+    /**
+     * Returns the hit and miss counts of the result cache, all 0 when it is not enabled.
+     */
+    public static CacheStatistics ResultCacheStatistics() {
+        return resultCache == null ? new CacheStatistics(0, 0, 0, 0) : resultCache.getStatistics();
     }
 
-    public static void ExportSqlQueryToExcel(String filename, String sqlString, Object... params) throws Exception {
+    public static void ExportSqlFileQueryToFile(String sqlQueryFilename, String outputFilename, Object... params) throws Exception {
+        StaticContext().exportSqlFileQueryToFile(sqlQueryFilename, outputFilename, params);
+    }
 
-        ArrayList<ArrayList<Object>> exportList = GenericSqlQuery(sqlString, params);
+    public static void ExportSqlFileQueryToExcel(String sqlQueryFilename, String outputFilename, Object... params) throws Exception {
+        StaticContext().exportSqlFileQueryToExcel(sqlQueryFilename, outputFilename, params);
+    }
 
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet spreadsheet = workbook.createSheet("Default");
-        XSSFRow spreadhSheetRow;
+    public static ArrayList<ArrayList<Object>> GenericSqlFileQuery(String sqlQueryFilename, Object... params) throws Exception {
+        return StaticContext().genericSqlFileQuery(sqlQueryFilename, params);
+    }
 
-        int rowId = 0;
-        int cellId = 0;
+    public static ArrayList<ArrayList<Object>> GenericSqlQuery(String sqlString, Object... params) {
+        return StaticContext().genericSqlQuery(sqlString, params);
+    }
 
-        if (header) {
-            spreadhSheetRow = spreadsheet.createRow(rowId++);
+    public static ColumnarResult GenericSqlFileQueryColumnar(String sqlQueryFilename, Object... params) throws Exception {
+        return StaticContext().genericSqlFileQueryColumnar(sqlQueryFilename, params);
+    }
 
-            for(Object object : exportList.get(0)) {
-                Cell cell = spreadhSheetRow.createCell(cellId++);
-                cell.setCellValue(object.toString());
-            }
-        }
+    public static ColumnarResult GenericSqlQueryColumnar(String sqlString, Object... params) throws Exception {
+        return StaticContext().genericSqlQueryColumnar(sqlString, params);
+    }
 
-        for (int rowCount = 1; rowCount < exportList.size(); rowCount++) {
-            cellId = 0;
-            spreadhSheetRow = spreadsheet.createRow(rowCount);
+    public static void ExportSqlQueryToFile(String filename, String sqlString, Object... params) throws Exception {
+        StaticContext().exportSqlQueryToFile(filename, sqlString, params);
+    }
 
-            for(Object object : exportList.get(rowCount)) {
-                Cell cell = spreadhSheetRow.createCell(cellId++);
-                if (object != null) {
-                    cell.setCellValue(object.toString());
-                }
-            }
-        }
+    public static long ExportSqlQueryToFileIncremental(String filename, String sqlString, String watermarkColumn,
+                                                       String checkpointFilename, boolean append, Object... params) throws Exception {
+        return StaticContext().exportSqlQueryToFileIncremental(filename, sqlString, watermarkColumn, checkpointFilename,
+                append, params);
+    }
+
+    public static List<ExportPartition> ExportSqlQueryToFilePartitioned(String filename, String sqlString, String splitColumn,
+                                                                        int partitions, boolean merge, Object... params) throws Exception {
+        return StaticContext().exportSqlQueryToFilePartitioned(filename, sqlString, splitColumn, partitions, merge, params);
+    }
 
-        FileOutputStream fileOutputStream = new FileOutputStream(new File(filename));
-        workbook.write(fileOutputStream);
-        fileOutputStream.close();
+    public static List<ExportPartition> ExportSqlQueryToFilePartitioned(String filename, String sqlString, String splitColumn,
+                                                                        List<?> boundaries, int parallelism, boolean merge,
+                                                                        Object... params) throws Exception {
+        return StaticContext().exportSqlQueryToFilePartitioned(filename, sqlString, splitColumn, boundaries, parallelism,
+                merge, params);
+    }
+
+    public static void ExportSqlQueryToExcel(String filename, String sqlString, Object... params) throws Exception {
+        StaticContext().exportSqlQueryToExcel(filename, sqlString, params);
     }
 
     public static <T> List<T> ExecuteSqlToList(String sql, Class<T> clazz, Object... params) {
-        Query query =  connection.createQueryWithParams(sql, params);
-        return query.executeAndFetch(clazz);
+        return StaticContext().executeSqlToList(sql, clazz, params);
     }
 
     public static <T> T SqlFindOne(String sql, Class<T> clazz, Object... params) {
-        Query query =  connection.createQueryWithParams(sql, params);
-        return query.executeAndFetchFirst(clazz);
+        return StaticContext().sqlFindOne(sql, clazz, params);
+    }
+
+    public static <T> LookupIndex<T> PreloadIndex(String sql, Class<T> clazz, String keyField, Object... params) throws Exception {
+        return StaticContext().preloadIndex(sql, clazz, keyField, params);
     }
 
     public static void ExecuteSql(String sqlString, Object... params) throws Exception {
-        Query query = connection.createQueryWithParams(sqlString, params);
-        query.executeUpdate();
+        StaticContext().executeSql(sqlString, params);
+    }
+
+    public static <T> long BulkLoad(String table, Class<T> beanClass, Iterable<? extends T> beans) throws Exception {
+        return StaticContext().bulkLoad(table, beanClass, beans);
+    }
+
+    public static <T> long BulkLoad(String table, Class<T> beanClass, Stream<? extends T> beans) throws Exception {
+        return StaticContext().bulkLoad(table, beanClass, beans);
+    }
+
+    public static long BulkLoadFile(String table, String filename) throws Exception {
+        return StaticContext().bulkLoadFile(table, filename);
     }
 
     public static void ExecuteSqlFile(String sqlFilename, Object... params) throws Exception {
-        String sqlQuery = FileUtils.readFileToString(new File(sqlFilename));
-        ExecuteSql(sqlQuery, params);
+        StaticContext().executeSqlFile(sqlFilename, params);
+    }
+
+    /**
+     * Runs the statement on a connection of its own on one of the <code>asyncThreads</code> worker threads.  Cancelling
+     * the future, or the <code>asyncTimeoutMillis</code> timeout, cancels the running statement.  Open a connection
+     * pool before using the Async methods, or each query opens a connection of its own.
+     */
+    public static CompletableFuture<Void> ExecuteSqlAsync(String sqlString, Object... params) {
+        return ExecuteSqlAsync(asyncTimeoutMillis, sqlString, params);
+    }
+
+    public static CompletableFuture<Void> ExecuteSqlAsync(long timeoutMillis, String sqlString, Object... params) {
+        return AsyncExecutor().submit(sqlContext -> {
+            sqlContext.executeSql(sqlString, params);
+            return null;
+        }, timeoutMillis);
+    }
+
+    public static <T> CompletableFuture<List<T>> ExecuteSqlToListAsync(String sql, Class<T> clazz, Object... params) {
+        return ExecuteSqlToListAsync(asyncTimeoutMillis, sql, clazz, params);
+    }
+
+    public static <T> CompletableFuture<List<T>> ExecuteSqlToListAsync(long timeoutMillis, String sql, Class<T> clazz,
+                                                                        Object... params) {
+        return AsyncExecutor().submit(sqlContext -> sqlContext.executeSqlToList(sql, clazz, params), timeoutMillis);
+    }
+
+    public static <T> CompletableFuture<T> SqlFindOneAsync(String sql, Class<T> clazz, Object... params) {
+        return SqlFindOneAsync(asyncTimeoutMillis, sql, clazz, params);
+    }
+
+    public static <T> CompletableFuture<T> SqlFindOneAsync(long timeoutMillis, String sql, Class<T> clazz, Object... params) {
+        return AsyncExecutor().submit(sqlContext -> sqlContext.sqlFindOne(sql, clazz, params), timeoutMillis);
+    }
+
+    public static CompletableFuture<Void> ExecuteSqlFileAsync(String sqlFilename, Object... params) {
+        return AsyncExecutor().submit(sqlContext -> {
+            sqlContext.executeSqlFile(sqlFilename, params);
+            return null;
+        }, asyncTimeoutMillis);
+    }
+
+    /**
+     * Runs the SQL files with at most <code>concurrency</code> running at once, each with the
+     * <code>asyncTimeoutMillis</code> timeout.  The future completes when every file has run, or fails with the first
+     * failure, after which no further files are started.
+     */
+    public static CompletableFuture<Void> ExecuteSqlFilesAsync(List<String> sqlFilenames, int concurrency) {
+        return ExecuteSqlFilesAsync(sqlFilenames, concurrency, asyncTimeoutMillis);
+    }
+
+    public static CompletableFuture<Void> ExecuteSqlFilesAsync(List<String> sqlFilenames, int concurrency, long timeoutMillis) {
+        return AsyncExecutor().executeSqlFiles(sqlFilenames, concurrency, timeoutMillis);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+package org.groovyutil.sql;
+
+import org.sql2o.Connection;
+import org.sql2o.Query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StatementCache keeps the most recently used sql2o Queries of one connection keyed by SQL text, so running the same
+ * SQL again skips parsing the named parameters and preparing the statement; only the parameters are bound again.
+ * The least recently used Query is closed once more than <code>capacity</code> are cached.
+ */
+final class StatementCache {
+
+    private final Connection connection;
+    private final int capacity;
+    private final LinkedHashMap<String, Query> queries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.queries = new LinkedHashMap<String, Query>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the cached Query for the SQL with the parameters bound as <code>:p1</code>, <code>:p2</code> and so on,
+     * preparing and caching it on first use.
+     */
+    synchronized Query getQuery(String sqlString, Object... params) {
+        if (capacity <= 0) {
+            misses++;
+            return connection.createQueryWithParams(sqlString, params);
+        }
+
+        Query query = queries.get(sqlString);
+        if (query != null) {
+            hits++;
+            return query.withParams(params);
+        }
+
+        misses++;
+        query = connection.createQueryWithParams(sqlString, params);
+        queries.put(sqlString, query);
+
+        if (queries.size() > capacity) {
+            Iterator<Map.Entry<String, Query>> eldest = queries.entrySet().iterator();
+            eldest.next().getValue().close();
+            eldest.remove();
+            evictions++;
+        }
+        return query;
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hits, misses, evictions, queries.size());
+    }
+
+    /**
+     * Closes every cached Query.
+     */
+    synchronized void clear() {
+        for (Query query : queries.values()) {
+            query.close();
+        }
+        queries.clear();
+    }
+}
@@ -0,0 +1,366 @@
+package org.groovyutil.pgp
+
+import org.bouncycastle.bcpg.HashAlgorithmTags
+import org.bouncycastle.openpgp.PGPKeyPair
+import org.bouncycastle.openpgp.PGPKeyRingGenerator
+import org.bouncycastle.openpgp.PGPPublicKey
+import org.bouncycastle.openpgp.PGPSignature
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.security.KeyPairGenerator
+
+class PgpUtilitySpecification extends Specification {
+
+    @Shared File directory
+    @Shared PGPKeyPair keyPair
+    @Shared String publicKeyFile
+    @Shared String privateKeyFile
+
+    def setupSpec() {
+        directory = Files.createTempDirectory("pgp").toFile()
+        publicKeyFile = new File(directory, "pub.asc").path
+        privateKeyFile = new File(directory, "priv.asc").path
+        keyPair = PgpUtility.generateKeyPair()
+        PgpUtility.writeKeyPairFile(keyPair, publicKeyFile, privateKeyFile, "test", "secret", true)
+    }
+
+    def cleanup() {
+        PgpUtility.setPrivateKeyCacheMaxAge(15 * 60 * 1000)
+        PgpUtility.evictKeyCache()
+    }
+
+    def cleanupSpec() {
+        directory.deleteDir()
+    }
+
+    def "Testing encryptFile and decryptFile round trip"() {
+        when:
+        def clearFile = new File(directory, "clear.txt")
+        def random = new Random(7)
+        clearFile.withOutputStream { out ->
+            (1..300).each { line ->
+                byte[] bytes = new byte[10000]
+                random.nextBytes(bytes)
+                out.write(line % 2 ? bytes : ("line " + line + "\n").multiply(500).bytes)
+            }
+        }
+        def cipherFile = new File(directory, "clear.dat")
+        def decryptedFile = new File(directory, "clear.out")
+        PgpUtility.encryptFile(clearFile.path, cipherFile.path, [publicKeyFile] as String[], armor, true)
+        PgpUtility.decryptFile(cipherFile.path, decryptedFile.path, privateKeyFile, "secret")
+
+        then:
+        cipherFile.length() > 0
+        (cipherFile.text.startsWith("-----BEGIN PGP MESSAGE-----")) == armor
+        decryptedFile.bytes == clearFile.bytes
+
+        where:
+        armor << [true, false]
+    }
+
+    def "Testing encrypt writes output before the input is fully read"() {
+        when:
+        def cipherOutput = new ByteArrayOutputStream()
+        def bytesOutBeforeEnd = -1
+        def clearInput = new InputStream() {
+            long remaining = 8 * 1024 * 1024
+            int read() { throw new UnsupportedOperationException() }
+            int read(byte[] buffer, int offset, int length) {
+                if (remaining == 0) {
+                    bytesOutBeforeEnd = cipherOutput.size()
+                    return -1
+                }
+                int count = (int) Math.min(length, remaining)
+                Arrays.fill(buffer, offset, offset + count, (byte) (remaining % 251))
+                remaining -= count
+                return count
+            }
+        }
+        PgpUtility.encrypt(clearInput, "stream.txt", cipherOutput, keyPair.publicKey, false, true)
+        def decrypted = new ByteArrayOutputStream()
+        PgpUtility.decrypt(new ByteArrayInputStream(cipherOutput.toByteArray()), decrypted, keyPair.privateKey)
+
+        then:
+        bytesOutBeforeEnd > 0
+        decrypted.size() == 8 * 1024 * 1024
+    }
+
+    def "Testing keys are parsed and unlocked once per key file"() {
+        when:
+        PgpUtility.evictKeyCache()
+        def before = PgpUtility.keyCacheStatistics()
+        def files = (1..5).collect {
+            def clearFile = new File(directory, "small" + it + ".txt")
+            clearFile.text = "small file " + it
+            PgpUtility.encryptFile(clearFile.path, clearFile.path + ".dat", publicKeyFile)
+            PgpUtility.decryptFile(clearFile.path + ".dat", clearFile.path + ".out", privateKeyFile, "secret")
+            clearFile
+        }
+        def after = PgpUtility.keyCacheStatistics()
+        def cachedById = PgpUtility.getCachedPublicKey(keyPair.publicKey.keyID)
+        def unknownId = PgpUtility.getCachedPublicKey(42L)
+        def afterIdLookups = PgpUtility.keyCacheStatistics()
+
+        then:
+        files.every { new File(it.path + ".out").text == it.text }
+        after.misses - before.misses == 2
+        after.hits - before.hits == 8
+        after.size == 2
+        cachedById.is(PgpUtility.readPublicKeyFile(publicKeyFile))
+        unknownId == null
+        afterIdLookups.hits == after.hits
+        afterIdLookups.misses == after.misses
+    }
+
+    def "Testing cached private keys expire, are evicted and need the same password"() {
+        when:
+        def first = PgpUtility.readPrivateKey(privateKeyFile, "secret")
+        def cached = PgpUtility.readPrivateKey(privateKeyFile, "secret")
+        PgpUtility.evictKeyCache(privateKeyFile)
+        def evicted = PgpUtility.readPrivateKey(privateKeyFile, "secret")
+        PgpUtility.setPrivateKeyCacheMaxAge(50)
+        Thread.sleep(100)
+        def expired = PgpUtility.readPrivateKey(privateKeyFile, "secret")
+        PgpUtility.readPrivateKey(privateKeyFile, "wrong")
+
+        then:
+        cached.is(first)
+        !evicted.is(first)
+        !expired.is(evicted)
+        thrown IllegalStateException
+    }
+
+    def "Testing expired private keys are dropped by the next lookup of any key"() {
+        when:
+        PgpUtility.evictKeyCache()
+        PgpUtility.setPrivateKeyCacheMaxAge(50)
+        PgpUtility.readPrivateKey(privateKeyFile, "secret")
+        def before = PgpUtility.keyCacheStatistics()
+        Thread.sleep(100)
+        PgpUtility.readPublicKeyFile(publicKeyFile)
+        def after = PgpUtility.keyCacheStatistics()
+
+        then:
+        before.size == 1
+        after.evictions - before.evictions == 1
+        after.size == 1
+
+        cleanup:
+        PgpUtility.setPrivateKeyCacheMaxAge(15 * 60 * 1000)
+    }
+
+    def "Testing encrypt round trips with each cipher and compression"() {
+        when:
+        def clearBytes = ("trade,account,amount\n" + (1..2000).collect { it + ",ACC" + (it % 17) + "," + it * 3 }
+                .join("\n")).bytes
+        def options = new EncryptionOptions().setCipher(cipher).setCompression(compression).setCompressionLevel(level)
+                .setArmor(false)
+        def cipherOutput = new ByteArrayOutputStream()
+        PgpUtility.encrypt(new ByteArrayInputStream(clearBytes), "trades.csv", cipherOutput,
+                [keyPair.publicKey] as PGPPublicKey[], options)
+        def decrypted = new ByteArrayOutputStream()
+        PgpUtility.decrypt(new ByteArrayInputStream(cipherOutput.toByteArray()), decrypted, keyPair.privateKey)
+
+        then:
+        decrypted.toByteArray() == clearBytes
+        (cipherOutput.size() < clearBytes.length) == (compression != EncryptionOptions.Compression.NONE)
+
+        where:
+        cipher                               | compression                           | level
+        EncryptionOptions.Cipher.AES_128     | EncryptionOptions.Compression.NONE    | -1
+        EncryptionOptions.Cipher.AES_256     | EncryptionOptions.Compression.ZIP     | 1
+        EncryptionOptions.Cipher.CAMELLIA_256 | EncryptionOptions.Compression.ZLIB   | 9
+        EncryptionOptions.Cipher.TWOFISH     | EncryptionOptions.Compression.BZIP2   | -1
+        EncryptionOptions.Cipher.CAST5       | EncryptionOptions.Compression.ZIP     | -1
+    }
+
+    def "Testing automatic compression skips incompressible input"() {
+        when:
+        def random = new byte[200000]
+        new Random(3).nextBytes(random)
+        def text = ("line of text\n" * 20000).bytes
+
+        then:
+        !PgpUtility.isCompressible(random, random.length)
+        PgpUtility.isCompressible(text, text.length)
+        PgpUtility.hasCompressedExtension("archive.ZIP")
+        PgpUtility.hasCompressedExtension("/data/export.csv.gz")
+        !PgpUtility.hasCompressedExtension("export.csv")
+        !PgpUtility.hasCompressedExtension("noextension")
+        decryptedSize(random, "random.bin", true) == random.length
+        decryptedSize(text, "text.csv", true) == text.length
+    }
+
+    def "Testing compression level must be between 1 and 9"() {
+        when:
+        new EncryptionOptions().setCompressionLevel(10)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "Testing signAndEncryptFile and decryptAndVerifyFile round trip"() {
+        when:
+        def clearFile = new File(directory, "signed.txt")
+        clearFile.text = (1..20000).collect { "signed line " + it }.join("\n")
+        def cipherFile = new File(directory, "signed.dat")
+        def decryptedFile = new File(directory, "signed.out")
+        PgpUtility.signAndEncryptFile(clearFile.path, cipherFile.path, [publicKeyFile] as String[], privateKeyFile,
+                "secret", new EncryptionOptions().setCompression(compression).setArmor(armor))
+        def signer = PgpUtility.decryptAndVerifyFile(cipherFile.path, decryptedFile.path, privateKeyFile, "secret",
+                publicKeyFile)
+
+        then:
+        signer == keyPair.privateKey.keyID
+        decryptedFile.text == clearFile.text
+
+        where:
+        compression                         | armor
+        EncryptionOptions.Compression.ZIP   | true
+        EncryptionOptions.Compression.NONE  | false
+    }
+
+    def "Testing decryptAndVerifyFile finds a signer that is not the encryption key of its ring"() {
+        when:
+        def generator = KeyPairGenerator.getInstance("RSA")
+        generator.initialize(2048)
+        def signingKeyPair = new JcaPGPKeyPair(PGPPublicKey.RSA_SIGN, generator.generateKeyPair(), new Date())
+        def encryptionKeyPair = new JcaPGPKeyPair(PGPPublicKey.RSA_ENCRYPT, generator.generateKeyPair(), new Date())
+        def ringGenerator = new PGPKeyRingGenerator(PGPSignature.POSITIVE_CERTIFICATION, signingKeyPair,
+                "counterparty", new JcaPGPDigestCalculatorProviderBuilder().build().get(HashAlgorithmTags.SHA1), null,
+                null, new JcaPGPContentSignerBuilder(PGPPublicKey.RSA_SIGN, HashAlgorithmTags.SHA256), null)
+        ringGenerator.addSubKey(encryptionKeyPair)
+        def counterpartyKeyFile = new File(directory, "counterparty.asc")
+        counterpartyKeyFile.withOutputStream { ringGenerator.generatePublicKeyRing().encode(it) }
+
+        def clearFile = new File(directory, "counterparty.txt")
+        clearFile.text = "from the counterparty"
+        def cipherFile = new File(directory, "counterparty.dat")
+        cipherFile.withOutputStream { out ->
+            PgpUtility.signAndEncrypt(new ByteArrayInputStream(clearFile.bytes), clearFile.name, out,
+                    [keyPair.publicKey] as PGPPublicKey[], signingKeyPair.privateKey, new EncryptionOptions())
+        }
+        def decryptedFile = new File(directory, "counterparty.out")
+        def signer = PgpUtility.decryptAndVerifyFile(cipherFile.path, decryptedFile.path, privateKeyFile, "secret",
+                counterpartyKeyFile.path)
+
+        then:
+        PgpUtility.readPublicKeyFile(counterpartyKeyFile.path).keyID == encryptionKeyPair.keyID
+        signer == signingKeyPair.keyID
+        decryptedFile.text == clearFile.text
+    }
+
+    def "Testing decryptAndVerify rejects unsigned messages and unknown signers"() {
+        when:
+        def clearFile = new File(directory, "verify.txt")
+        clearFile.text = "verify me"
+        PgpUtility.encryptFile(clearFile.path, clearFile.path + ".plain", publicKeyFile)
+        PgpUtility.signAndEncryptFile(clearFile.path, clearFile.path + ".signed", [publicKeyFile] as String[],
+                privateKeyFile, "secret")
+        def unsigned = failure {
+            PgpUtility.decryptAndVerifyFile(clearFile.path + ".plain", clearFile.path + ".out1", privateKeyFile,
+                    "secret", publicKeyFile)
+        }
+        def unknownSigner = failure {
+            PgpUtility.decryptAndVerify(new FileInputStream(clearFile.path + ".signed"), new ByteArrayOutputStream(),
+                    keyPair.privateKey)
+        }
+
+        then:
+        unsigned.message == "Message is not signed."
+        !new File(clearFile.path + ".out1").exists()
+        unknownSigner.message.startsWith("No verification key for signer")
+    }
+
+    def "Testing encryptFiles and decryptFiles process a file set in parallel"() {
+        when:
+        def inputDirectory = new File(directory, "batch-in")
+        def encryptedDirectory = new File(directory, "batch-enc")
+        def outputDirectory = new File(directory, "batch-out")
+        [inputDirectory, encryptedDirectory, outputDirectory]*.mkdirs()
+        (1..12).each { new File(inputDirectory, "file" + it + ".csv").text = ("row " + it + "\n") * (it * 1000) }
+        new File(inputDirectory, "skipped.txt").text = "not matched"
+        new File(encryptedDirectory, "corrupt.pgp").bytes = new byte[100]
+
+        def encrypted = PgpUtility.encryptFiles(inputDirectory.path + "/file*.csv", encryptedDirectory.path,
+                [publicKeyFile] as String[], new EncryptionOptions().setArmor(false), 4)
+        def decrypted = PgpUtility.decryptFiles(encryptedDirectory.path + "/*.pgp", outputDirectory.path,
+                privateKeyFile, "secret", 4)
+
+        then:
+        encrypted.successful
+        encrypted.results.size() == 12
+        encrypted.results.every { new File(it.outputFileName).length() == it.outputBytes && it.outputBytes > 0 }
+        decrypted.results.size() == 13
+        decrypted.failures*.inputFileName == [new File(encryptedDirectory, "corrupt.pgp").path]
+        !new File(outputDirectory, "corrupt").exists()
+        (1..12).every {
+            new File(outputDirectory, "file" + it + ".csv").text == new File(inputDirectory, "file" + it + ".csv").text
+        }
+        outputDirectory.list().length == 12
+    }
+
+    def "Testing encryptFiles fails inputs that share an output name"() {
+        when:
+        def outputDirectory = new File(directory, "duplicate-out")
+        outputDirectory.mkdirs()
+        def inputs = ["dup-a", "dup-b"].collect { name ->
+            def inputDirectory = new File(directory, name)
+            inputDirectory.mkdirs()
+            def file = new File(inputDirectory, "x.csv")
+            file.text = "from " + name
+            file.path
+        }
+        def unique = new File(directory, "unique.csv")
+        unique.text = "unique"
+        def report = PgpUtility.encryptFiles(inputs + [unique.path], outputDirectory.path, [publicKeyFile] as String[],
+                new EncryptionOptions(), 3)
+
+        then:
+        report.results*.successful == [false, false, true]
+        report.failures.every { it.error instanceof IllegalArgumentException }
+        outputDirectory.list() as List == ["unique.csv.pgp"]
+    }
+
+    def "Testing decryptFiles verifies signatures when verification keys are given"() {
+        when:
+        def inputDirectory = new File(directory, "signed-in")
+        def outputDirectory = new File(directory, "signed-out")
+        [inputDirectory, outputDirectory]*.mkdirs()
+        def clearFile = new File(directory, "batch-signed.txt")
+        clearFile.text = "signed batch"
+        PgpUtility.signAndEncryptFile(clearFile.path, new File(inputDirectory, "signed.txt.gpg").path,
+                [publicKeyFile] as String[], privateKeyFile, "secret")
+        PgpUtility.encryptFile(clearFile.path, new File(inputDirectory, "unsigned.txt.gpg").path, publicKeyFile)
+        def report = PgpUtility.decryptFiles(inputDirectory.path + "/*.gpg", outputDirectory.path, privateKeyFile,
+                "secret", 0, publicKeyFile)
+
+        then:
+        report.results*.successful == [true, false]
+        new File(outputDirectory, "signed.txt").text == "signed batch"
+        outputDirectory.list() as List == ["signed.txt"]
+    }
+
+    private static Exception failure(Closure closure) {
+        try {
+            closure()
+        } catch (IllegalStateException e) {
+            return e
+        }
+        null
+    }
+
+    private int decryptedSize(byte[] clearBytes, String name, boolean auto) {
+        def cipherOutput = new ByteArrayOutputStream()
+        PgpUtility.encrypt(new ByteArrayInputStream(clearBytes), name, cipherOutput, [keyPair.publicKey] as PGPPublicKey[],
+                new EncryptionOptions().setAutoCompression(auto).setArmor(false))
+        def decrypted = new ByteArrayOutputStream()
+        PgpUtility.decrypt(new ByteArrayInputStream(cipherOutput.toByteArray()), decrypted, keyPair.privateKey)
+        decrypted.size()
+    }
+}
@@ -0,0 +1,102 @@
+package org.groovyutil.record
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook
+import spock.lang.Specification
+
+import java.time.LocalDate
+
+class ExcelRecordFactorySpecification extends Specification {
+
+    static class ExcelRecordTest {
+        @DataField(id = 0, name = "name")           public String name;
+        @DataField(id = 1, name = "quantity")       public Integer quantity;
+        @DataField(id = 2, name = "amount")         public BigDecimal amount;
+        @DataField(id = 4, name = "tradeDate")      public LocalDate tradeDate;
+    }
+
+    ExcelRecordFactory excelRecordFactory
+    File file
+
+    def setup() {
+        excelRecordFactory = new ExcelRecordFactory()
+        file = File.createTempFile("records", ".xlsx")
+        file.deleteOnExit()
+
+        def workbook = new XSSFWorkbook()
+        workbook.createSheet("Summary").createRow(0).createCell(0).setCellValue("ignored")
+        def sheet = workbook.createSheet("Trades")
+        def dateStyle = workbook.createCellStyle()
+        dateStyle.setDataFormat(workbook.creationHelper.createDataFormat().getFormat("yyyy-mm-dd"))
+
+        def header = sheet.createRow(0)
+        ["name", "quantity", "amount", "unused", "tradeDate"].eachWithIndex { title, column -> header.createCell(column).setCellValue(title) }
+        [["ABC", 10, 1.5, LocalDate.of(2016, 1, 1)], ["DEF", 20, -2.25, null], ["XYZ", 30, 3000, LocalDate.of(2016, 12, 31)]].eachWithIndex { values, rowCnt ->
+            def row = sheet.createRow(rowCnt + 1)
+            row.createCell(0).setCellValue(values[0] as String)
+            row.createCell(1).setCellValue(values[1] as double)
+            row.createCell(2).setCellValue(values[2] as double)
+            if (values[3] != null) {
+                def cell = row.createCell(4)
+                cell.setCellValue(java.sql.Date.valueOf(values[3] as LocalDate))
+                cell.setCellStyle(dateStyle)
+            }
+        }
+        sheet.createRow(5).createCell(0).setCellValue("TRAILER")
+
+        file.withOutputStream { workbook.write(it) }
+    }
+
+    def "Testing getRecordListByPositionFromFile reads the named sheet"() {
+        when:
+        excelRecordFactory.sheetName = "trades"
+        excelRecordFactory.trailerRows = 1
+        def records = excelRecordFactory.getRecordListByPositionFromFile(file.path, ExcelRecordTest.class)
+
+        then:
+        records.size() == 3
+        records[0].name == 'ABC'
+        records[0].quantity == 10
+        records[0].amount == 1.5
+        records[0].tradeDate == LocalDate.of(2016, 1, 1)
+        records[1].amount == -2.25
+        records[1].tradeDate == null
+        records[2].tradeDate == LocalDate.of(2016, 12, 31)
+    }
+
+    def "Testing getRecordIteratorByPositionFromFile closes early"() {
+        when:
+        excelRecordFactory.sheetName = "Trades"
+        def iterator = excelRecordFactory.getRecordIteratorByPositionFromFile(file.path, ExcelRecordTest.class)
+        def first = iterator.next()
+        iterator.close()
+
+        then:
+        first.name == 'ABC'
+        !iterator.hasNext()
+    }
+
+    def "Testing columnIndex"() {
+        expect:
+        XlsxSheetReader.columnIndex(reference) == column
+
+        where:
+        reference | column
+        "A1"      | 0
+        "Z10"     | 25
+        "AA3"     | 26
+        "AB12"    | 27
+    }
+
+    def "Testing plainNumber"() {
+        expect:
+        XlsxSheetReader.plainNumber(text) == plain
+
+        where:
+        text       | plain
+        "10"       | "10"
+        "10.0"     | "10"
+        "-2.25"    | "-2.25"
+        "1.0E7"    | "10000000"
+        "1.5E-3"   | "0.0015"
+    }
+}
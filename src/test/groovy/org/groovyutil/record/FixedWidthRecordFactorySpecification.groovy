@@ -17,6 +17,18 @@ class FixedWidthRecordFactorySpecification extends Specification {
         @FixedWidthField(name = "Today String", start = 35, length = 10)                            public String todayString = "TODAY";
         @FixedWidthField(name = "End String", start = 45, length = 7)                               public String endString = "!!END!!";    }
 
+    static class FixedWidthReadBean {
+        @FixedWidthField(name = "Name", start = 0, length = 6)                                      public String name;
+        @FixedWidthField(name = "Quantity", start = 6, length = 6)                                  public Integer quantity;
+        @FixedWidthField(name = "Amount", start = 12, length = 10)                                  public BigDecimal amount;
+        @FixedWidthField(name = "Date", start = 22, length = 8, dateFormat = "yyyyMMdd")            public LocalDate date;
+    }
+
+    static class FixedWidthScaleBean {
+        @FixedWidthField(name = "Amount", start = 0, length = 8, scale = 2)                         public BigDecimal amount;
+        @FixedWidthField(name = "Count", start = 8, length = 12)                                    public Long count;
+    }
+
     FixedWidthRecordFactory fixedWidthRecordFactory
     FixedWidthTestBean fixedWidthTestBean;
 
@@ -98,6 +110,94 @@ class FixedWidthRecordFactorySpecification extends Specification {
         stringValue == '2016010120160101-12100010999990111TODAY     !!END!!'
     }
 
+    def "Testing  BeanFactory.getBeanFromFixedWidthBuffer"() {
+
+        when:
+        def bean = fixedWidthRecordFactory.getBeanFromFixedWidthBuffer('ABC   001234 1,234.50-20160101', FixedWidthReadBean.class)
+
+        then:
+        bean.name == 'ABC'
+        bean.quantity == 1234
+        bean.amount == -1234.50
+        bean.date == LocalDate.of(2016, 01, 01)
+    }
+
+    def "Testing  BeanFactory.getBeanIteratorFromFixedWidthFile"() {
+
+        when:
+        def file = File.createTempFile("fixed", ".txt")
+        file.deleteOnExit()
+        file.text = "HEADER\r\nABC   001234 1,234.50-20160101\r\nDEF         00000001\r\nXYZ\r\nTRAILER\r\n"
+        fixedWidthRecordFactory.trailerRows = 1
+        def beans = fixedWidthRecordFactory.getBeanIteratorFromFixedWidthFile(file.path, FixedWidthReadBean.class).collect { it }
+
+        then:
+        beans.size() == 3
+        beans[0].name == 'ABC'
+        beans[0].quantity == 1234
+        beans[0].amount == -1234.50
+        beans[0].date == LocalDate.of(2016, 01, 01)
+        beans[1].name == 'DEF'
+        beans[1].quantity == null
+        beans[1].amount == 1
+        beans[2].name == 'XYZ'
+        beans[2].date == null
+    }
+
+    def "Testing  BeanFactory.getBeanIteratorFromFixedWidthFile with EBCDIC fixed length records"() {
+
+        when:
+        def file = File.createTempFile("fixed", ".dat")
+        file.deleteOnExit()
+        def charset = java.nio.charset.Charset.forName("Cp1047")
+        file.bytes = ("ABC   000012    100.0020160101" + "DEF   000034    200.5020161231").getBytes(charset)
+        fixedWidthRecordFactory.headerRows = 0
+        fixedWidthRecordFactory.charset = charset
+        fixedWidthRecordFactory.recordLength = 30
+        def beans = []
+        def count = fixedWidthRecordFactory.processBeansFromFixedWidthFile(file.path, FixedWidthReadBean.class, { beans << it })
+
+        then:
+        count == 2
+        beans[0].name == 'ABC'
+        beans[0].quantity == 12
+        beans[1].amount == 200.50
+        beans[1].date == LocalDate.of(2016, 12, 31)
+    }
+
+    def "Testing  BeanFactory.getBeanFromFixedWidthBuffer applies implied scale"() {
+
+        when:
+        def bean = fixedWidthRecordFactory.getBeanFromFixedWidthBuffer('00123402000012345678', FixedWidthScaleBean.class)
+
+        then:
+        bean.amount == 1234.02
+        bean.amount.scale() == 2
+        bean.count == 12345678L
+    }
+
+    def "Testing  BeanFactory.writeFixedWidthBeansToFile"() {
+
+        when:
+        def file = File.createTempFile("fixed", ".txt")
+        file.deleteOnExit()
+        def first = new FixedWidthTestBean()
+        first.dateTime = LocalDateTime.of(LocalDate.of(2016,01, 01), LocalTime.MIDNIGHT)
+        first.date = LocalDate.of(2016,01, 01)
+        def second = new FixedWidthTestBean()
+        second.bigDecimal = new BigDecimal("-1.5")
+        second.longValue = -42L
+        second.todayString = null
+        def count = fixedWidthRecordFactory.writeFixedWidthBeansToFile(file.path, [first, second].stream())
+        def lines = file.readLines()
+
+        then:
+        count == 2
+        lines.size() == 2
+        lines[0] == '2016010120160101-12100010999990111TODAY     !!END!!'
+        lines[1] == '                   0-150000-420111          !!END!!'
+    }
+
 //    def "Testing  BeanFactory.writeFixedWidthBeanListToFile"() {
 //
 //        when:
@@ -10,6 +10,12 @@ class RecordFactorySpecification extends Specification {
         @DataField(id = 1, name = "fieldTwo")       public Integer fieldTwo;
     }
 
+    static class StreamRecordTest {
+        @DataField(id = 0, name = "fieldOne")       public String fieldOne;
+        @DataField(id = 1, name = "fieldTwo")       public Integer fieldTwo;
+        @DataField(id = 2, name = "fieldThree")     public BigDecimal fieldThree;
+    }
+
   DelimitedRecordFactory recordFactory;
 
     def setup() {
@@ -27,6 +33,20 @@ class RecordFactorySpecification extends Specification {
             fieldMap.size() == 3
     }
 
+    def "Testing RecordSchema is shared across factories and threads"() {
+        when:
+        def schemas = Collections.synchronizedList([])
+        def threads = (1..8).collect {
+            Thread.start { schemas << new DelimitedRecordFactory().getIdDataFieldMapByClass(StreamRecordTest.class) }
+        }
+        threads*.join()
+
+        then:
+        schemas.size() == 8
+        schemas.every { it.is(RecordSchema.of(StreamRecordTest.class).getDataFieldMap()) }
+        RecordSchema.of(StreamRecordTest.class).getDataFields().find { it.dataField.id() == 2 }.dataField.name() == 'fieldThree'
+    }
+
     def "Testing setBeanField"() {
         when:
         def fieldMap = recordFactory.getIdDataFieldMapByClass(RecordTest.class)
@@ -40,5 +60,103 @@ class RecordFactorySpecification extends Specification {
 
     }
 
+    def "Testing getRecordIteratorByPositionFromFile skips header and trailer rows"() {
+        when:
+        def file = File.createTempFile("records", ".txt")
+        file.deleteOnExit()
+        file.text = "fieldOne|fieldTwo|fieldThree\r\nA|1|1.50\r\nB|2|2.50\r\nC|3|3,000.00-\r\nTRAILER|3\r\n"
+        recordFactory.setTrailerRows(1)
+        def iterator = recordFactory.getRecordIteratorByPositionFromFile(file.path, StreamRecordTest.class)
+        def records = iterator.collect { it }
+
+        then:
+        records.size() == 3
+        records[0].fieldOne == 'A'
+        records[1].fieldTwo == 2
+        records[2].fieldThree == -3000.00
+        !iterator.hasNext()
+    }
+
+    def "Testing getRecordListByPositionFromFile maps columns by header name"() {
+        when:
+        def file = File.createTempFile("records", ".txt")
+        file.deleteOnExit()
+        file.text = "unused|FIELDTHREE|other|fieldOne|fieldTwo\r\nx|1.50|y|A|1\r\nx|2.50|y|B|2\r\n"
+        recordFactory.mapByHeaderName = true
+        def records = recordFactory.getRecordListByPositionFromFile(file.path, StreamRecordTest.class)
+        def columns = recordFactory.selectColumns(file.path, RecordSchema.of(StreamRecordTest.class))
 
+        then:
+        columns.indexes == [3, 4, 1] as int[]
+        records.size() == 2
+        records[0].fieldOne == 'A'
+        records[0].fieldTwo == 1
+        records[1].fieldThree == 2.50
+    }
+
+    def "Testing processRecordsByPositionFromFile"() {
+        when:
+        def file = File.createTempFile("records", ".txt")
+        file.deleteOnExit()
+        file.text = "fieldOne|fieldTwo|fieldThree\r\nA|1|1.50\r\nB|2|2.50\r\n"
+        def names = []
+        def count = recordFactory.processRecordsByPositionFromFile(file.path, StreamRecordTest.class, { names << it.fieldOne })
+
+        then:
+        count == 2
+        names == ['A', 'B']
+    }
+
+    def "Testing getRecordListByPositionFromFileParallel matches sequential parse"() {
+        when:
+        def file = File.createTempFile("records", ".txt")
+        file.deleteOnExit()
+        file.withWriter { writer ->
+            writer << "fieldOne|fieldTwo|fieldThree\r\n"
+            (1..100000).each { writer << "NAME${it}|${it}|${it}.25\r\n" }
+            writer << "TRAILER|100000\r\n"
+        }
+        recordFactory.setTrailerRows(1)
+        def sequential = recordFactory.getRecordListByPositionFromFile(file.path, StreamRecordTest.class)
+        def ordered = recordFactory.getRecordListByPositionFromFileParallel(file.path, StreamRecordTest.class, 4, true)
+        def unordered = recordFactory.getRecordListByPositionFromFileParallel(file.path, StreamRecordTest.class, 4, false)
+
+        then:
+        recordFactory.getChunkOffsets(file.toPath(), 4).length > 2
+        ordered.size() == 100000
+        ordered*.fieldTwo == sequential*.fieldTwo
+        unordered*.fieldTwo.sort() == sequential*.fieldTwo
+        ordered[99999].fieldThree == 100000.25
+    }
+
+    def "Testing NumberDecoder matches cleanNumberString for #value"() {
+        expect:
+        NumberDecoder.decodeBigDecimal(value, 0) == new BigDecimal(RecordFactory.cleanNumberString(value))
+        NumberDecoder.decodeBigDecimal(value, 0).scale() == new BigDecimal(RecordFactory.cleanNumberString(value)).scale()
+
+        where:
+        value << ['0', '12', '-12', '12-', '+12', '1,234.50', '$1,234.50-', ' 1 234 ', '.5', '5.', '-0.00',
+                  '123456789012345678', '12345678901234567890.123', '1E5']
+    }
+
+    def "Testing NumberDecoder integers, trailing signs and implied scale"() {
+        expect:
+        NumberDecoder.decodeInteger('1,234-') == -1234
+        NumberDecoder.decodeLong('9,876,543,210') == 9876543210L
+        NumberDecoder.decodeBigDecimal('12+', 0) == 12
+        NumberDecoder.decodeBigDecimal('0123456', 2) == 1234.56
+        NumberDecoder.decodeBigDecimal('0123456-', 2) == -1234.56
+        NumberDecoder.decodeBigDecimal('1234.5', 2) == 1234.5
+    }
+
+    def "Testing NumberDecoder rejects malformed numbers"() {
+        when:
+        NumberDecoder.decodeInteger(value)
+
+        then:
+        thrown NumberFormatException
+
+        where:
+        value << ['', '$', '1.5', '12AB', '--1']
+    }
 }
@@ -0,0 +1,645 @@
+package org.groovyutil.sql
+
+import org.apache.poi.ss.usermodel.Cell
+import org.apache.poi.xssf.usermodel.XSSFWorkbook
+import org.groovyutil.record.DataField
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.sql.Timestamp
+import java.time.LocalDateTime
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+class SqlUtilitySpecification extends Specification {
+
+    static class TradeRecord {
+        @DataField(id = 0, name = "id")                 public Integer id;
+        @DataField(id = 1, name = "name")               public String name;
+        @DataField(id = 2, name = "amount")             public BigDecimal amount;
+        @DataField(id = 3, name = "trade_time")         public LocalDateTime tradeTime;
+        @DataField(id = 4, name = "note", output = false) public String note;
+    }
+
+    static class MeasureRecord {
+        @DataField(id = 0, name = "id")                 public Integer id;
+        @DataField(id = 1, name = "flag")               public Boolean flag;
+        @DataField(id = 2, name = "ratio")              public Double ratio;
+        @DataField(id = 3, name = "qty")                public Short qty;
+        @DataField(id = 4, name = "ref")                public UUID ref;
+    }
+
+    def setup() {
+        SqlUtility.OpenSqlConnection("jdbc:h2:mem:sqlutility;DB_CLOSE_DELAY=-1", "sa", "")
+        SqlUtility.ExecuteSql("DROP TABLE IF EXISTS trade")
+        SqlUtility.ExecuteSql("CREATE TABLE trade (id INT PRIMARY KEY, name VARCHAR(20), amount DECIMAL(12,2), trade_time TIMESTAMP)")
+        (1..5).each {
+            SqlUtility.ExecuteSql("INSERT INTO trade VALUES (:p1, :p2, :p3, :p4)", it, "T" + it, it * 1.5, Timestamp.valueOf("2016-01-0${it} 10:30:00"))
+        }
+    }
+
+    def cleanup() {
+        SqlUtility.header = true
+        SqlUtility.batchSize = 1000
+        SqlUtility.commitInterval = 10000
+        SqlUtility.rowsPerInsert = 1
+        SqlUtility.nativeBulkLoad = true
+        SqlUtility.DisableResultCache()
+        SqlUtility.CloseSqlConnection()
+    }
+
+    def "Testing ExportSqlQueryToFile streams delimited rows"() {
+        when:
+        def file = File.createTempFile("export", ".txt")
+        file.deleteOnExit()
+        SqlUtility.ExportSqlQueryToFile(file.path, "SELECT id, name, amount FROM trade WHERE id <= :p1 ORDER BY id", 2)
+        def lines = file.readLines()
+
+        then:
+        lines == ['ID|NAME|AMOUNT', '1|T1|1.50', '2|T2|3.00']
+    }
+
+    def "Testing ExportSqlQueryToFile without header"() {
+        when:
+        def file = File.createTempFile("export", ".txt")
+        file.deleteOnExit()
+        SqlUtility.header = false
+        SqlUtility.ExportSqlQueryToFile(file.path, "SELECT id FROM trade WHERE id > :p1", 10)
+
+        then:
+        file.text == ''
+    }
+
+    def "Testing ExportSqlQueryToExcel writes typed cells"() {
+        when:
+        def file = File.createTempFile("export", ".xlsx")
+        file.deleteOnExit()
+        SqlUtility.ExportSqlQueryToExcel(file.path, "SELECT id, name, amount, trade_time FROM trade WHERE id > :p1 ORDER BY id", 3)
+        def sheet = new XSSFWorkbook(file.path).getSheetAt(0)
+
+        then:
+        sheet.sheetName == 'Default'
+        sheet.lastRowNum == 2
+        sheet.getRow(0).getCell(1).stringCellValue == 'NAME'
+        sheet.getRow(1).getCell(0).cellType == Cell.CELL_TYPE_NUMERIC
+        sheet.getRow(1).getCell(0).numericCellValue == 4
+        sheet.getRow(1).getCell(1).stringCellValue == 'T4'
+        sheet.getRow(2).getCell(2).numericCellValue == 7.5
+        sheet.getRow(2).getCell(3).dateCellValue == Timestamp.valueOf("2016-01-05 10:30:00")
+    }
+
+    def "Testing WriteResultSetToExcel splits sheets at the row limit"() {
+        when:
+        def file = File.createTempFile("export", ".xlsx")
+        file.deleteOnExit()
+        def sqlContext = SqlUtility.StaticContext()
+        def cursor = sqlContext.openSqlCursor("SELECT id FROM trade ORDER BY id")
+        def rowCnt = cursor.withCloseable { sqlContext.writeResultSetToExcel(cursor, file.path, 3) }
+        def workbook = new XSSFWorkbook(file.path)
+
+        then:
+        rowCnt == 5
+        workbook.numberOfSheets == 3
+        workbook.getSheetAt(2).sheetName == 'Default 3'
+        workbook.getSheetAt(2).getRow(0).getCell(0).stringCellValue == 'ID'
+        workbook.getSheetAt(2).getRow(1).getCell(0).numericCellValue == 5
+    }
+
+    def "Testing OpenSqlContext borrows a pooled connection per thread"() {
+        when:
+        SqlUtility.CloseSqlConnection()
+        SqlUtility.OpenSqlConnectionPool("jdbc:h2:mem:sqlutility;DB_CLOSE_DELAY=-1", "sa", "", 1, 5)
+        def connections = Collections.synchronizedSet(new HashSet())
+        def counts = Collections.synchronizedList([])
+        def latch = new java.util.concurrent.CountDownLatch(4)
+        def threads = (1..4).collect { id ->
+            Thread.start {
+                SqlUtility.OpenSqlContext().withCloseable { sqlContext ->
+                    sqlContext.executeSql("INSERT INTO trade (id, name) VALUES (:p1, :p2)", 100 + id, "W" + id)
+                    connections << sqlContext.connection.jdbcConnection.unwrap(java.sql.Connection)
+                    latch.countDown()
+                    latch.await(30, java.util.concurrent.TimeUnit.SECONDS)
+                    counts << sqlContext.sqlFindOne("SELECT count(*) FROM trade WHERE id > :p1", Integer, 100)
+                }
+            }
+        }
+        threads*.join()
+
+        then:
+        connections.size() == 4
+        counts.size() == 4
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade", Integer) == 9
+    }
+
+    def "Testing BulkLoad inserts beans in batches"() {
+        when:
+        SqlUtility.batchSize = 4
+        SqlUtility.commitInterval = 6
+        SqlUtility.rowsPerInsert = rowsPerInsert
+        def records = (11..20).collect {
+            new TradeRecord(id: it, name: it % 3 ? "B" + it : null, amount: it / 4, tradeTime: LocalDateTime.of(2016, 1, 1, 9, it))
+        }
+        def rowCnt = SqlUtility.BulkLoad("trade", TradeRecord, records.stream())
+
+        then:
+        rowCnt == 10
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade WHERE id > :p1", Integer, 10) == 10
+        SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 13) == 'B13'
+        SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 12) == null
+        SqlUtility.SqlFindOne("SELECT amount FROM trade WHERE id = :p1", BigDecimal, 19) == 4.75
+        SqlUtility.SqlFindOne("SELECT trade_time FROM trade WHERE id = :p1", Timestamp, 20) == Timestamp.valueOf("2016-01-01 09:20:00")
+
+        where:
+        rowsPerInsert << [1, 3]
+    }
+
+    def "Testing BulkLoad rolls back uncommitted rows on failure"() {
+        when:
+        SqlUtility.batchSize = 2
+        SqlUtility.commitInterval = 0
+        SqlUtility.BulkLoad("trade", TradeRecord, [new TradeRecord(id: 30), new TradeRecord(id: 31), new TradeRecord(id: 1)])
+
+        then:
+        thrown Exception
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade", Integer) == 5
+    }
+
+    def "Testing BulkLoad binds typed nulls for boxed and unmapped fields"() {
+        when:
+        SqlUtility.ExecuteSql("DROP TABLE IF EXISTS measure")
+        SqlUtility.ExecuteSql("CREATE TABLE measure (id INT PRIMARY KEY, flag BOOLEAN, ratio DOUBLE, qty SMALLINT, ref UUID)")
+        def rowCnt = SqlUtility.BulkLoad("measure", MeasureRecord, [new MeasureRecord(id: 1),
+                new MeasureRecord(id: 2, flag: true, ratio: 0.5d, qty: 3 as Short, ref: UUID.randomUUID())])
+
+        then:
+        rowCnt == 2
+        SqlUtility.SqlFindOne("SELECT count(*) FROM measure WHERE flag IS NULL AND ratio IS NULL AND qty IS NULL AND ref IS NULL", Integer) == 1
+        SqlUtility.SqlFindOne("SELECT ratio FROM measure WHERE id = :p1", Double, 2) == 0.5d
+    }
+
+    def "Testing ExportSqlQueryToFilePartitioned merges ranges in key order"() {
+        when:
+        SqlUtility.CloseSqlConnection()
+        SqlUtility.OpenSqlConnectionPool("jdbc:h2:mem:sqlutility;DB_CLOSE_DELAY=-1", "sa", "", 1, 5)
+        SqlUtility.BulkLoad("trade", TradeRecord, (6..100).collect { new TradeRecord(id: it, name: "T" + it) })
+        SqlUtility.ExecuteSql("INSERT INTO trade (id, name) VALUES (:p1, :p2)", 0, null)
+        def file = File.createTempFile("export", ".txt")
+        file.deleteOnExit()
+        def partitions = SqlUtility.ExportSqlQueryToFilePartitioned(file.path,
+                "SELECT id, name FROM trade WHERE id >= :p1;", "id", 4, true, 1)
+        def lines = file.readLines()
+
+        then:
+        partitions.size() == 4
+        partitions*.lowerBound == [null, 26L, 51L, 76L]
+        partitions*.rowCount.sum() == 100
+        lines.size() == 101
+        lines[0] == 'ID|NAME'
+        lines.count { it == 'ID|NAME' } == 1
+        lines.drop(1).collect { it.split('\\|')[0] as int }.collate(25).collect { [it.min(), it.max()] } == [[1, 25], [26, 50], [51, 75], [76, 100]]
+        partitions.every { !new File(it.filename).exists() }
+    }
+
+    def "Testing ExportSqlQueryToFilePartitioned with boundaries keeps part files"() {
+        when:
+        def file = File.createTempFile("export", ".txt")
+        file.deleteOnExit()
+        def partitions = SqlUtility.ExportSqlQueryToFilePartitioned(file.path, "SELECT id, trade_time FROM trade",
+                "trade_time", [Timestamp.valueOf("2016-01-03 00:00:00")], 2, false)
+        def parts = partitions.collect { new File(it.filename).readLines() }
+        partitions.each { new File(it.filename).delete() }
+
+        then:
+        partitions*.rowCount == [2, 3]
+        parts[0][0] == 'ID|TRADE_TIME'
+        parts[0].drop(1).collect { it.split('\\|')[0] as int }.sort() == [1, 2]
+        parts[1].drop(1).collect { it.split('\\|')[0] as int }.sort() == [3, 4, 5]
+    }
+
+    def "Testing ExportSqlQueryToFilePartitioned with a qualified split column"() {
+        when:
+        def file = File.createTempFile("export", ".txt")
+        file.deleteOnExit()
+        def partitions = SqlUtility.ExportSqlQueryToFilePartitioned(file.path,
+                "SELECT t.id, t.name FROM trade t WHERE t.id <= :p1", "t.id", 2, true, 5)
+        def lines = file.readLines()
+
+        then:
+        partitions.size() == 2
+        partitions*.rowCount.sum() == 5
+        lines[0] == 'ID|NAME'
+        lines.drop(1).collect { it.split('\\|')[0] as int } == [1, 2, 3, 4, 5]
+    }
+
+    def "Testing repeated statements are prepared once per connection"() {
+        when:
+        def before = SqlUtility.StatementCacheStatistics()
+        def names = (1..5).collect { SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, it) }
+        def after = SqlUtility.StatementCacheStatistics()
+
+        then:
+        names == ['T1', 'T2', 'T3', 'T4', 'T5']
+        after.misses - before.misses == 1
+        after.hits - before.hits == 4
+    }
+
+    def "Testing SQL files are cached until modified"() {
+        when:
+        def sqlFile = File.createTempFile("query", ".sql")
+        sqlFile.deleteOnExit()
+        sqlFile.text = "SELECT count(*) FROM trade"
+        def before = SqlUtility.SqlFileCacheStatistics()
+        def first = SqlUtility.GenericSqlFileQuery(sqlFile.path)
+        def second = SqlUtility.GenericSqlFileQuery(sqlFile.path)
+        def cached = SqlUtility.SqlFileCacheStatistics()
+        sqlFile.text = "SELECT count(*) FROM trade WHERE id > 2"
+        sqlFile.setLastModified(sqlFile.lastModified() + 2000)
+        def third = SqlUtility.GenericSqlFileQuery(sqlFile.path)
+        def after = SqlUtility.SqlFileCacheStatistics()
+
+        then:
+        first[1][0] == 5
+        second[1][0] == 5
+        cached.hits - before.hits == 1
+        third[1][0] == 3
+        after.misses - before.misses == 2
+    }
+
+    def "Testing the result cache serves repeated queries until their table is written"() {
+        when:
+        SqlUtility.EnableResultCache(100, 0)
+        def first = SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 2)
+        def missing = SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 9)
+        def list = SqlUtility.ExecuteSqlToList("SELECT name FROM trade WHERE id > :p1 ORDER BY id", String, 3)
+        def statementsBefore = SqlUtility.StatementCacheStatistics()
+        def second = SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 2)
+        def missingAgain = SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 9)
+        def listAgain = SqlUtility.ExecuteSqlToList("SELECT name FROM trade WHERE id > :p1 ORDER BY id", String, 3)
+        def statementsAfter = SqlUtility.StatementCacheStatistics()
+        def cached = SqlUtility.ResultCacheStatistics()
+        SqlUtility.ExecuteSql("UPDATE trade SET name = :p1 WHERE id = :p2", "X2", 2)
+        def updated = SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 2)
+
+        then:
+        first == 'T2' && second == 'T2'
+        missing == null && missingAgain == null
+        list == ['T4', 'T5'] && listAgain.is(list)
+        statementsAfter.hits + statementsAfter.misses == statementsBefore.hits + statementsBefore.misses
+        cached.hits == 3
+        cached.misses == 3
+        updated == 'X2'
+        SqlUtility.ResultCacheStatistics().size == 1
+    }
+
+    def "Testing the result cache evicts by size and age"() {
+        when:
+        SqlUtility.EnableResultCache(2, ttlMillis)
+        (1..3).each { SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, it) }
+        Thread.sleep(sleepMillis)
+        SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 3)
+        def statistics = SqlUtility.ResultCacheStatistics()
+
+        then:
+        statistics.size == 2
+        statistics.hits == hits
+        statistics.evictions == evictions
+
+        where:
+        ttlMillis | sleepMillis | hits | evictions
+        0         | 0           | 1    | 1
+        50        | 100         | 0    | 2
+    }
+
+    def "Testing InvalidateResultCache drops the queries of a table"() {
+        when:
+        SqlUtility.EnableResultCache(100, 0)
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade", Integer)
+        SqlUtility.SqlFindOne("SELECT t.name FROM PUBLIC.trade t JOIN trade u ON u.id = t.id WHERE t.id = :p1", String, 1)
+        SqlUtility.SqlFindOne("SELECT 1 FROM dual", Integer)
+        SqlUtility.InvalidateResultCache("TRADE")
+
+        then:
+        SqlUtility.ResultCacheStatistics().size == 1
+        ResultCache.tablesOf("SELECT * FROM a JOIN \"s\".\"b\" ON 1 = 1; INSERT INTO c SELECT 1; UPDATE d SET x = 1") as List == ['A', 'B', 'C', 'D']
+    }
+
+    def "Testing PreloadIndex looks rows up by key without querying"() {
+        when:
+        def index = SqlUtility.PreloadIndex("SELECT id, name, amount FROM trade WHERE id > :p1", TradeRecord, "id", 1)
+        SqlUtility.ExecuteSql("DELETE FROM trade")
+
+        then:
+        index.size() == 4
+        index.get(3).name == 'T3'
+        index.get(3L).amount == 4.5
+        index.get(new BigDecimal("5.00")).name == 'T5'
+        index.get(1) == null
+        !index.containsKey(9)
+    }
+
+    def "Testing PreloadIndex rejects duplicate keys"() {
+        when:
+        SqlUtility.PreloadIndex("SELECT t.id, t.name FROM trade t, trade u", TradeRecord, "id")
+
+        then:
+        thrown IllegalStateException
+    }
+
+    def "Testing GenericSqlQueryColumnar reads typed columns"() {
+        when:
+        SqlUtility.ExecuteSql("INSERT INTO trade (id, name) VALUES (:p1, :p2)", 6, null)
+        (7..1100).each { SqlUtility.ExecuteSql("INSERT INTO trade (id, name, amount) VALUES (:p1, :p2, :p3)", it, "N" + (it % 3), it * 0.5) }
+        def result = SqlUtility.GenericSqlQueryColumnar("SELECT id, name, amount, trade_time FROM trade WHERE id >= :p1 ORDER BY id", 2)
+        def names = result.getStringColumn("NAME")
+        def total = 0d
+        def cursor = result.cursor()
+        while (cursor.next()) {
+            total += cursor.getDouble("amount")
+        }
+
+        then:
+        result.rowCount == 1099
+        result.columnCount == 4
+        result.getColumn(0).type == ColumnarResult.ColumnType.LONG
+        result.getColumn("amount").type == ColumnarResult.ColumnType.DOUBLE
+        names.type == ColumnarResult.ColumnType.STRING
+        result.getColumn("trade_time").type == ColumnarResult.ColumnType.OBJECT
+        result.getLongColumn("id").values.length == 1099
+        result.getLong(0, 0) == 2
+        names.get(0) == 'T2'
+        names.get(4) == null && result.isNull(4, 1) && names.getCode(4) == -1
+        result.getDouble(4, 2) == 0 && result.isNull(4, 2)
+        !result.isNull(1098, 2)
+        names.dictionary as List == ['T2', 'T3', 'T4', 'T5', 'N1', 'N2', 'N0']
+        result.getObject(0, 3) == Timestamp.valueOf("2016-01-02 10:30:00")
+        result.getString(1, 2) == '4.5'
+        total == (2..5).sum { it * 1.5 } + (7..1100).sum { it * 0.5 }
+    }
+
+    def "Testing GenericSqlQuery keeps the column order of the query"() {
+        when:
+        def result = SqlUtility.GenericSqlQuery("SELECT trade_time, name, id FROM trade WHERE id = :p1", 3)
+
+        then:
+        result[0] == ['TRADE_TIME', 'NAME', 'ID']
+        result[1] == [Timestamp.valueOf("2016-01-03 10:30:00"), 'T3', 3]
+    }
+
+    def "Testing ExportSqlQueryToFileIncremental exports only rows above the checkpoint"() {
+        when:
+        def directory = Files.createTempDirectory("incremental").toFile()
+        directory.deleteOnExit()
+        def file = new File(directory, "trades.txt")
+        def checkpoint = new File(directory, "trades.checkpoint")
+        def first = SqlUtility.ExportSqlQueryToFileIncremental(file.path, "SELECT id, name FROM trade;", "id", checkpoint.path, append)
+        def firstLines = file.readLines()
+        def unchanged = SqlUtility.ExportSqlQueryToFileIncremental(file.path, "SELECT id, name FROM trade", "id", checkpoint.path, append)
+        SqlUtility.ExecuteSql("INSERT INTO trade (id, name) VALUES (:p1, :p2)", 7, "T7")
+        SqlUtility.ExecuteSql("INSERT INTO trade (id, name) VALUES (:p1, :p2)", 6, "T6")
+        def second = SqlUtility.ExportSqlQueryToFileIncremental(file.path, "SELECT id, name FROM trade", "id", checkpoint.path, append)
+        def properties = new Properties()
+        checkpoint.withInputStream { properties.load(it) }
+
+        then:
+        first == 5
+        firstLines == ['ID|NAME', '1|T1', '2|T2', '3|T3', '4|T4', '5|T5']
+        unchanged == 0
+        second == 2
+        file.readLines() == expected
+        properties.watermark == '7'
+        properties.watermarkType == 'long'
+        directory.list().sort() == ['trades.checkpoint', 'trades.txt']
+
+        where:
+        append | expected
+        true   | ['ID|NAME', '1|T1', '2|T2', '3|T3', '4|T4', '5|T5', '6|T6', '7|T7']
+        false  | ['ID|NAME', '6|T6', '7|T7']
+    }
+
+    def "Testing ExportSqlQueryToFileIncremental recovers from an interrupted run"() {
+        when:
+        def directory = Files.createTempDirectory("incremental").toFile()
+        directory.deleteOnExit()
+        def file = new File(directory, "trades.txt")
+        def checkpoint = new File(directory, "trades.checkpoint")
+        SqlUtility.ExportSqlQueryToFileIncremental(file.path, "SELECT id, trade_time FROM trade WHERE id < :p1", "trade_time", checkpoint.path, true, 4)
+        file << "4|partial row of a failed run\n"
+        new File(directory, "other.txt.1.tmp").text = "kept"
+        def rowCnt = SqlUtility.ExportSqlQueryToFileIncremental(file.path, "SELECT id, trade_time FROM trade WHERE id < :p1", "trade_time", checkpoint.path, true, 6)
+        def properties = new Properties()
+        checkpoint.withInputStream { properties.load(it) }
+
+        then:
+        rowCnt == 2
+        file.readLines()*.split("\\|")*.getAt(0) == ['ID', '1', '2', '3', '4', '5']
+        properties.watermark == '2016-01-05 10:30:00.0'
+        properties.watermarkType == 'timestamp'
+        new File(directory, "other.txt.1.tmp").exists()
+    }
+
+    def "Testing ExportSqlQueryToFileIncremental completes a rename interrupted after the checkpoint"() {
+        when:
+        def directory = Files.createTempDirectory("incremental").toFile()
+        directory.deleteOnExit()
+        def file = new File(directory, "trades.txt")
+        def checkpoint = new File(directory, "trades.checkpoint")
+        def tempFile = new File(directory, "trades.txt.100.tmp")
+        tempFile.text = "ID\n1\n2\n"
+        def staleFile = new File(directory, "trades.txt.200.tmp")
+        staleFile.text = "ID\n3\n"
+        def properties = new Properties()
+        properties.putAll(column: 'id', watermark: '2', watermarkType: 'long', file: file.absolutePath, fileLength: '7', tempFile: tempFile.absolutePath)
+        checkpoint.withOutputStream { properties.store(it, null) }
+        def rowCnt = SqlUtility.ExportSqlQueryToFileIncremental(file.path, "SELECT id FROM trade", "id", checkpoint.path, true)
+
+        then:
+        rowCnt == 3
+        file.readLines() == ['ID', '1', '2', '3', '4', '5']
+        !staleFile.exists()
+        directory.list().sort() == ['trades.checkpoint', 'trades.txt']
+    }
+
+    def "Testing ExportSqlQueryToFileIncremental recovers an append run that failed after a full export"() {
+        when:
+        def directory = Files.createTempDirectory("incremental").toFile()
+        directory.deleteOnExit()
+        def file = new File(directory, "trades[1].txt")
+        def checkpoint = new File(directory, "trades.checkpoint")
+        def sql = "SELECT id, name FROM trade WHERE id <= :p1"
+        SqlUtility.ExportSqlQueryToFileIncremental(file.path, sql, "id", checkpoint.path, false, 3)
+        file << "4|T4\n"
+        def staleFile = new File(directory, "trades[1].txt.300.tmp")
+        staleFile.text = "ID|NAME\n"
+        def rowCnt = SqlUtility.ExportSqlQueryToFileIncremental(file.path, sql, "id", checkpoint.path, true, 5)
+        def properties = new Properties()
+        checkpoint.withInputStream { properties.load(it) }
+
+        then:
+        rowCnt == 2
+        file.readLines() == ['ID|NAME', '1|T1', '2|T2', '3|T3', '4|T4', '5|T5']
+        !staleFile.exists()
+        properties.tempFile == null
+        properties.watermark == '5'
+    }
+
+    def "Testing ExportSqlQueryToFileIncremental accepts a qualified watermark column"() {
+        when:
+        def file = File.createTempFile("incremental", ".txt")
+        def checkpoint = File.createTempFile("incremental", ".checkpoint")
+        [file, checkpoint]*.delete()
+        [file, checkpoint]*.deleteOnExit()
+        def sql = "SELECT t.id, t.name FROM trade t WHERE t.id > :p1"
+        def first = SqlUtility.ExportSqlQueryToFileIncremental(file.path, sql, "t.id", checkpoint.path, true, 2)
+        SqlUtility.ExecuteSql("INSERT INTO trade (id, name) VALUES (:p1, :p2)", 6, "T6")
+        def second = SqlUtility.ExportSqlQueryToFileIncremental(file.path, sql, "t.id", checkpoint.path, true, 2)
+
+        then:
+        first == 3
+        second == 1
+        file.readLines() == ['ID|NAME', '3|T3', '4|T4', '5|T5', '6|T6']
+    }
+
+    def "Testing BulkLoadFile loads an exported file"() {
+        when:
+        SqlUtility.nativeBulkLoad = nativeBulkLoad
+        SqlUtility.header = header
+        SqlUtility.batchSize = 2
+        SqlUtility.ExecuteSql("UPDATE trade SET name = NULL WHERE id = 2")
+        def file = File.createTempFile("load", ".txt")
+        file.deleteOnExit()
+        SqlUtility.ExportSqlQueryToFile(file.path, "SELECT id + 10 AS id, name, amount, trade_time FROM trade")
+        def rowCnt = SqlUtility.BulkLoadFile("trade", file.path)
+
+        then:
+        rowCnt == 5
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade", Integer) == 10
+        SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 13) == 'T3'
+        SqlUtility.SqlFindOne("SELECT name FROM trade WHERE id = :p1", String, 12) == null
+        SqlUtility.SqlFindOne("SELECT amount FROM trade WHERE id = :p1", BigDecimal, 15) == 7.5
+        SqlUtility.SqlFindOne("SELECT trade_time FROM trade WHERE id = :p1", Timestamp, 14) == Timestamp.valueOf("2016-01-04 10:30:00")
+
+        where:
+        nativeBulkLoad | header
+        true           | true
+        true           | false
+        false          | true
+        false          | false
+    }
+
+    def "Testing BulkLoadFile loads the header columns in file order"() {
+        when:
+        SqlUtility.nativeBulkLoad = nativeBulkLoad
+        def file = File.createTempFile("load", ".txt")
+        file.deleteOnExit()
+        file.text = "name|ID\n\"A|B\"|21\n|22\n"
+        def rowCnt = SqlUtility.BulkLoadFile("trade", file.path)
+
+        then:
+        rowCnt == 2
+        SqlUtility.ExecuteSqlToList("SELECT name FROM trade WHERE id > 20 ORDER BY id", String) == ['A|B', null]
+
+        where:
+        nativeBulkLoad << [true, false]
+    }
+
+    def "Testing BulkLoadFile rejects header names that are not columns of the table"() {
+        when:
+        SqlUtility.nativeBulkLoad = nativeBulkLoad
+        def file = File.createTempFile("load", ".txt")
+        file.deleteOnExit()
+        file.text = "id|name) SELECT 1, 'x' --\n40|X\n"
+        SqlUtility.BulkLoadFile("trade", file.path)
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message.contains("name) SELECT 1, 'x' --")
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade", Integer) == 5
+
+        where:
+        nativeBulkLoad << [true, false]
+    }
+
+    def "Testing BulkLoadFile rolls back on failure"() {
+        when:
+        SqlUtility.nativeBulkLoad = nativeBulkLoad
+        SqlUtility.batchSize = 1
+        SqlUtility.commitInterval = 0
+        def file = File.createTempFile("load", ".txt")
+        file.deleteOnExit()
+        file.text = "id|name\n30|X\n1|duplicate\n"
+        SqlUtility.BulkLoadFile("trade", file.path)
+
+        then:
+        thrown Exception
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade", Integer) == 5
+
+        where:
+        nativeBulkLoad << [true, false]
+    }
+
+    def "Testing async queries overlap on the pool"() {
+        when:
+        SqlUtility.CloseSqlConnection()
+        SqlUtility.OpenSqlConnectionPool("jdbc:h2:mem:sqlutility;DB_CLOSE_DELAY=-1", "sa", "", 1, 5)
+        def updates = (6..9).collect { SqlUtility.ExecuteSqlAsync("INSERT INTO trade (id, name) VALUES (:p1, :p2)", it, "A" + it) }
+        CompletableFuture.allOf(updates as CompletableFuture[]).get(30, TimeUnit.SECONDS)
+        def names = SqlUtility.ExecuteSqlToListAsync("SELECT name FROM trade WHERE id > :p1 ORDER BY id", String, 5)
+        def count = SqlUtility.SqlFindOneAsync("SELECT count(*) FROM trade", Integer)
+
+        then:
+        names.get(30, TimeUnit.SECONDS) == ['A6', 'A7', 'A8', 'A9']
+        count.get(30, TimeUnit.SECONDS) == 9
+    }
+
+    def "Testing async queries are cancelled on timeout and cancel"() {
+        when:
+        SqlUtility.CloseSqlConnection()
+        SqlUtility.OpenSqlConnectionPool("jdbc:h2:mem:sqlutility;DB_CLOSE_DELAY=-1", "sa", "", 1, 3)
+        def longQuery = "SELECT count(*) FROM system_range(1, 1000000000) a, system_range(1, 1000000000) b"
+        def timedOut = SqlUtility.SqlFindOneAsync(200, longQuery, Long)
+        def cancelled = SqlUtility.SqlFindOneAsync(longQuery, Long)
+        Thread.sleep(200)
+        cancelled.cancel(true)
+        def timeoutFailure = null
+        try {
+            timedOut.get(30, TimeUnit.SECONDS)
+        } catch (ExecutionException e) {
+            timeoutFailure = e.cause
+        }
+        def after = (1..2).collect { SqlUtility.SqlFindOneAsync("SELECT count(*) FROM trade", Integer) }
+
+        then:
+        timeoutFailure instanceof TimeoutException
+        cancelled.isCancelled()
+        after*.get(30, TimeUnit.SECONDS) == [5, 5]
+    }
+
+    def "Testing ExecuteSqlFilesAsync runs files with limited concurrency"() {
+        when:
+        SqlUtility.CloseSqlConnection()
+        SqlUtility.OpenSqlConnectionPool("jdbc:h2:mem:sqlutility;DB_CLOSE_DELAY=-1", "sa", "", 1, 5)
+        def files = (6..11).collect {
+            def file = File.createTempFile("step", ".sql")
+            file.deleteOnExit()
+            file.text = it == failAt ? "INSERT INTO missing_table VALUES (1)" : "INSERT INTO trade (id, name) VALUES (${it}, 'F${it}')"
+            file.path
+        }
+        def failure = null
+        try {
+            SqlUtility.ExecuteSqlFilesAsync(files, concurrency).get(30, TimeUnit.SECONDS)
+        } catch (ExecutionException e) {
+            failure = e.cause
+        }
+
+        then:
+        (failure != null) == (failAt != 0)
+        SqlUtility.SqlFindOne("SELECT count(*) FROM trade", Integer) == expectedRows
+
+        where:
+        failAt | concurrency | expectedRows
+        0      | 2           | 11
+        7      | 1           | 6
+    }
+}
@@ -0,0 +1,97 @@
+package org.groovyutil;
+
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.groovyutil.pgp.EncryptionOptions;
+import org.groovyutil.pgp.PgpUtility;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Prints the encryption throughput of each cipher and compression setting, for text-like and random input.  Pass the
+ * input size in MB as the first argument, 64 by default.
+ */
+public class PgpThroughputTest {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        PGPKeyPair keyPair = PgpUtility.generateKeyPair();
+        PGPPublicKey[] publicKeys = new PGPPublicKey[]{keyPair.getPublicKey()};
+
+        byte[] text = textData(sizeMb << 20);
+        byte[] random = new byte[sizeMb << 20];
+        new Random(11).nextBytes(random);
+
+        EncryptionOptions.Cipher[] ciphers = {EncryptionOptions.Cipher.AES_128, EncryptionOptions.Cipher.AES_256,
+                EncryptionOptions.Cipher.CAST5};
+        for (EncryptionOptions.Cipher cipher : ciphers) {
+            run("text", text, publicKeys, options(cipher, EncryptionOptions.Compression.NONE, -1, false));
+            run("random", random, publicKeys, options(cipher, EncryptionOptions.Compression.NONE, -1, false));
+        }
+        for (EncryptionOptions.Compression compression : EncryptionOptions.Compression.values()) {
+            int[] levels = compression == EncryptionOptions.Compression.ZIP
+                    || compression == EncryptionOptions.Compression.ZLIB
+                    ? new int[]{Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION}
+                    : new int[]{Deflater.DEFAULT_COMPRESSION};
+            for (int level : levels) {
+                run("text", text, publicKeys, options(EncryptionOptions.Cipher.AES_128, compression, level, false));
+                run("random", random, publicKeys, options(EncryptionOptions.Cipher.AES_128, compression, level, false));
+                run("random", random, publicKeys, options(EncryptionOptions.Cipher.AES_128, compression, level, true));
+            }
+        }
+    }
+
+    private static EncryptionOptions options(EncryptionOptions.Cipher cipher, EncryptionOptions.Compression compression,
+                                             int level, boolean auto) {
+        return new EncryptionOptions()
+                .setCipher(cipher)
+                .setCompression(compression)
+                .setCompressionLevel(level)
+                .setAutoCompression(auto)
+                .setArmor(false);
+    }
+
+    private static void run(String inputName, byte[] input, PGPPublicKey[] publicKeys, EncryptionOptions options) {
+        CountingOutputStream output = new CountingOutputStream();
+        long startTime = System.nanoTime();
+        PgpUtility.encrypt(new ByteArrayInputStream(input), inputName, output, publicKeys, options);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(String.format("%-6s %s  %8.1f MB/s  ratio %.3f", inputName, options,
+                input.length / seconds / (1 << 20), (double) output.count / input.length));
+    }
+
+    private static byte[] textData(int size) {
+        Random random = new Random(7);
+        StringBuilder line = new StringBuilder();
+        byte[] data = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            line.setLength(0);
+            line.append(random.nextInt(1000000)).append(',').append("ACCOUNT").append(random.nextInt(500)).append(',')
+                    .append(random.nextInt(100000) / 100.0).append(",2016-0").append(1 + random.nextInt(9))
+                    .append("-1").append(random.nextInt(10)).append('\n');
+            byte[] bytes = line.toString().getBytes();
+            int length = Math.min(bytes.length, size - offset);
+            System.arraycopy(bytes, 0, data, offset, length);
+            offset += length;
+        }
+        return data;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}